@@ -0,0 +1,56 @@
+package benchmarks;
+
+import cords.TrecEvaluation;
+import org.openjdk.jmh.annotations.*;
+import schemas.Qrels;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of a run (MAP, R-precision, P@k, nDCG@k and recall of every topic) with synthetic graded judgements.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluationBenchmark {
+    @Param({"50", "1000"})
+    public int numTopics;
+
+    @Param({"1000"})
+    public int cut;
+
+    @Param({"10"})
+    public int k;
+
+    private Map<Integer, List<String>> rankings;
+    private Qrels qrels;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(Fixtures.SEED);
+        int numDocs = 100000;
+        rankings = new TreeMap<>();
+        qrels = new Qrels();
+        for (int topicID = 1; topicID <= numTopics; topicID++) {
+            List<String> ranking = new ArrayList<>(cut);
+            for (int i = 0; i < cut; i++) {
+                ranking.add(String.format("u%07d", random.nextInt(numDocs)));
+            }
+            rankings.put(topicID, ranking);
+            for (int i = 0; i < 400; i++) {
+                // half of the judged documents are retrieved ones
+                String docID = i % 2 == 0 ? ranking.get(random.nextInt(cut)) : String.format("u%07d", random.nextInt(numDocs));
+                qrels.add(topicID, docID, random.nextInt(3));
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<Integer, TrecEvaluation.TopicMetrics> evaluate() {
+        return TrecEvaluation.evaluate(rankings, qrels, k);
+    }
+}
@@ -0,0 +1,227 @@
+package benchmarks;
+
+import formats.Metadata;
+import lucene.IdxReader;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import schemas.CompressedRefsVector;
+import schemas.TopicQuery;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Synthetic fixtures of the benchmarks, so they run without the CORD-19 collection. Every fixture is generated from a
+ * fixed seed, so all the runs of a benchmark measure the same data.
+ */
+public class Fixtures {
+    public static final long SEED = 42;
+    private static final String[] STOPWORDS = {"and", "or", "the", "at", "of", "a", "in"};
+    private static final String SPECIAL_CHARS = "[]()/-':\"}{*?!^~+;";
+
+    /**
+     * Vocabulary of numWords pseudo-words.
+     */
+    public static String[] vocabulary(int numWords, Random random) {
+        String[] words = new String[numWords];
+        for (int i = 0; i < numWords; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 3 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words[i] = word.toString();
+        }
+        return words;
+    }
+
+    /**
+     * Text of numWords words of the vocabulary (Zipf-like frequencies) mixed with stopwords, special characters of
+     * the query syntax and runs of whitespace, as the titles and abstracts of the collection.
+     */
+    public static String text(String[] vocabulary, int numWords, Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < numWords; i++) {
+            if (i > 0) {
+                text.append(random.nextInt(20) == 0 ? "  " : " ");
+            }
+            int dice = random.nextInt(10);
+            if (dice < 2) {
+                text.append(STOPWORDS[random.nextInt(STOPWORDS.length)]);
+            } else {
+                int rank = (int) Math.min(vocabulary.length - 1, Math.abs(random.nextGaussian()) * vocabulary.length / 4);
+                text.append(vocabulary[rank]);
+            }
+            if (dice == 9) {
+                text.append(SPECIAL_CHARS.charAt(random.nextInt(SPECIAL_CHARS.length())));
+            }
+        }
+        return text.toString();
+    }
+
+    public static float[] embedding(int dimension, Random random) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    /**
+     * Writes an article JSON file with the structure of document_parses (metadata authors, body_text paragraphs with
+     * cite spans and bib_entries).
+     */
+    public static Path article(Path folder, String[] vocabulary, int numParagraphs, int numReferences, Random random)
+            throws IOException {
+        Path path = folder.resolve("article-" + random.nextInt(Integer.MAX_VALUE) + ".json");
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("{\"paper_id\": \"synthetic\", \"metadata\": {\"title\": \"" + text(vocabulary, 12, random)
+                    .replace("\"", "") + "\", \"authors\": [");
+            for (int i = 0; i < 5; i++) {
+                writer.write((i > 0 ? ", " : "") + author(vocabulary, random));
+            }
+            writer.write("]}, \"body_text\": [");
+            for (int i = 0; i < numParagraphs; i++) {
+                writer.write((i > 0 ? ", " : "") + "{\"text\": \"" + text(vocabulary, 120, random).replace("\"", "")
+                        + "\", \"cite_spans\": [{\"start\": 0, \"end\": 4, \"text\": \"[1]\", \"ref_id\": \"BIBREF"
+                        + random.nextInt(numReferences) + "\"}], \"section\": \"Introduction\"}");
+            }
+            writer.write("], \"bib_entries\": {");
+            for (int i = 0; i < numReferences; i++) {
+                writer.write((i > 0 ? ", " : "") + "\"BIBREF" + i + "\": {\"ref_id\": \"b" + i + "\", \"title\": \""
+                        + text(vocabulary, 10, random).replace("\"", "") + "\", \"authors\": [" +
+                        author(vocabulary, random) + "], \"year\": 2019, \"venue\": \"Journal\"}");
+            }
+            writer.write("}}");
+        }
+        return path;
+    }
+
+    private static String author(String[] vocabulary, Random random) {
+        return "{\"first\": \"" + vocabulary[random.nextInt(vocabulary.length)] + "\", \"middle\": [], \"last\": \"" +
+                vocabulary[random.nextInt(vocabulary.length)] + "\", \"suffix\": \"\"}";
+    }
+
+    /**
+     * Metadata row of an article with the title, abstract and authors of the collection (the JSON files are given to
+     * the parser apart).
+     */
+    public static Metadata metadata(String cordUID, String[] vocabulary, Random random) {
+        List<String> authors = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            authors.add(vocabulary[random.nextInt(vocabulary.length)] + ", " + vocabulary[random.nextInt(vocabulary.length)]);
+        }
+        return new Metadata(cordUID, text(vocabulary, 12, random), authors, text(vocabulary, 150, random), "Journal",
+                null, List.of());
+    }
+
+    /**
+     * Sparse references vectors of numNodes documents (rows of a CitationGraph.Builder, "cordID:count" entries sorted
+     * by cordID) with meanDegree references on average. Cited documents follow a Zipf-like distribution, so a few
+     * documents are cited by many others, and about 10% of the documents have no references (dangling).
+     */
+    public static String[] citationRows(int numNodes, int meanDegree, Random random) {
+        String[] rows = new String[numNodes];
+        for (int row = 0; row < numNodes; row++) {
+            if (random.nextInt(10) == 0) {
+                rows[row] = "";
+                continue;
+            }
+            TreeMap<Integer, Integer> counts = new TreeMap<>();
+            int degree = 1 + random.nextInt(2 * meanDegree);
+            for (int i = 0; i < degree; i++) {
+                int target = (int) Math.min(numNodes - 1, Math.abs(random.nextGaussian()) * numNodes / 8);
+                counts.merge(target, 1 + random.nextInt(3), Integer::sum);
+            }
+            StringBuilder content = new StringBuilder();
+            for (Map.Entry<Integer, Integer> count : counts.entrySet()) {
+                if (content.length() > 0) {
+                    content.append(CompressedRefsVector.ITEM_VECTOR_SEP);
+                }
+                content.append(count.getKey()).append(CompressedRefsVector.ENTRY_SEP).append((double) count.getValue());
+            }
+            rows[row] = content.toString();
+        }
+        return rows;
+    }
+
+    /**
+     * Builds an index with the fields used by the retrieval models (see PoolIndexing): stored cordUID, title and
+     * abstract with term vectors, body with term vectors, KNN embedding and PageRank doc values.
+     */
+    public static IdxReader index(Path folder, String[] vocabulary, int numDocs, int dimension, Random random)
+            throws IOException {
+        FieldType textFieldType = new FieldType();
+        textFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        textFieldType.setStored(true);
+        textFieldType.setTokenized(true);
+        textFieldType.setStoreTermVectors(true);
+        FieldType bodyFieldType = new FieldType(textFieldType);
+        bodyFieldType.setStored(false);
+
+        try (IndexWriter writer = new IndexWriter(FSDirectory.open(folder), new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (int cordID = 0; cordID < numDocs; cordID++) {
+                Document doc = new Document();
+                doc.add(new StoredField("cordUID", String.format("u%07d", cordID)));
+                doc.add(new StoredField("cordID", Integer.toString(cordID)));
+                doc.add(new Field("title", text(vocabulary, 12, random), textFieldType));
+                doc.add(new Field("abstract", text(vocabulary, 150, random), textFieldType));
+                doc.add(new Field("body", text(vocabulary, 600, random), bodyFieldType));
+                doc.add(new StoredField("authors", text(vocabulary, 6, random)));
+                doc.add(new KnnVectorField(IdxReader.EMBEDDING_FIELD, embedding(dimension, random)));
+                double pageRank = random.nextDouble() / numDocs;
+                doc.add(new DoubleDocValuesField("binaryPageRank", pageRank));
+                doc.add(new DoubleDocValuesField("countPageRank", pageRank));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        return new IdxReader(folder.toString());
+    }
+
+    /**
+     * Topic queries with the title, abstract and body field texts and weights of QueryComputation.
+     */
+    public static List<TopicQuery> topics(String[] vocabulary, int numTopics, int dimension, Random random) {
+        List<TopicQuery> topics = new ArrayList<>();
+        for (int topicID = 1; topicID <= numTopics; topicID++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                text.append(i > 0 ? " " : "").append(vocabulary[random.nextInt(vocabulary.length / 4)]);
+            }
+            TopicQuery topic = new TopicQuery(topicID, text.toString(), new schemas.Embedding(embedding(dimension, random)));
+            Map<String, String> fieldTexts = new HashMap<>();
+            Map<String, Float> fieldWeights = new HashMap<>();
+            String[] fields = {"title", "abstract", "body"};
+            float[] weights = {20F, 10F, 5F};
+            for (int i = 0; i < fields.length; i++) {
+                fieldTexts.put(fields[i], topic.text());
+                fieldWeights.put(fields[i], weights[i]);
+            }
+            topic.setFieldTexts(fieldTexts);
+            topic.setFieldWeights(fieldWeights);
+            topics.add(topic);
+        }
+        return topics;
+    }
+
+    /**
+     * Deletes a temporary folder of a fixture.
+     */
+    public static void delete(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package benchmarks;
+
+import cords.CollectionReader;
+import cords.PoolIndexing;
+import formats.Metadata;
+import lucene.IdxWriter;
+import org.apache.lucene.document.Document;
+import org.openjdk.jmh.annotations.*;
+import schemas.ParsedArticle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the Lucene document of an article (PoolIndexing.buildDocument()) and writing a batch of documents in a new
+ * index with the analyzer and similarity of PoolIndexing (see IdxWriter).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexingBenchmark {
+    @Param({"1000"})
+    public int batchSize;
+
+    @Param({"20"})
+    public int bodyLines;
+
+    @Param({"32"})
+    public int dimension;
+
+    private Path folder;
+    private Path indexFolder;
+    private Metadata[] rows;
+    private ParsedArticle[] articles;
+    private float[][] embeddings;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(Fixtures.SEED);
+        String[] vocabulary = Fixtures.vocabulary(20000, random);
+        folder = Files.createTempDirectory("bench-articles");
+        indexFolder = folder.resolve("index");
+        rows = new Metadata[batchSize];
+        articles = new ParsedArticle[batchSize];
+        embeddings = new float[batchSize][];
+        for (int i = 0; i < batchSize; i++) {
+            rows[i] = Fixtures.metadata(String.format("u%07d", i), vocabulary, random);
+            Path article = Fixtures.article(folder, vocabulary, 40, 60, random);
+            articles[i] = CollectionReader.parseArticle(article, bodyLines);
+            embeddings[i] = Fixtures.embedding(dimension, random);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(folder);
+    }
+
+    @Benchmark
+    public Document buildDocument() {
+        int i = next;
+        next = (next + 1) % batchSize;
+        return PoolIndexing.buildDocument(rows[i], articles[i], i, i, embeddings[i]);
+    }
+
+    /**
+     * Builds the documents of the batch and writes them in a new index (one commit).
+     */
+    @Benchmark
+    public int indexBatch() {
+        IdxWriter iwriter = new IdxWriter(indexFolder.toString());
+        for (int i = 0; i < batchSize; i++) {
+            iwriter.addDocument(PoolIndexing.buildDocument(rows[i], articles[i], i, i, embeddings[i]));
+        }
+        iwriter.commit();
+        iwriter.close();
+        return batchSize;
+    }
+}
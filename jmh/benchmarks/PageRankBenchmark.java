@@ -0,0 +1,67 @@
+package benchmarks;
+
+import cords.PageRank;
+import cords.PageRankSolver;
+import org.openjdk.jmh.annotations.*;
+import schemas.CitationGraph;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PageRank over a synthetic references graph: loading the sparse references vectors in a CitationGraph, transposing
+ * it (inverting process) and solving both PageRank variants with the parameters of PageRank.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PageRankBenchmark {
+    @Param({"100000"})
+    public int numNodes;
+
+    @Param({"10"})
+    public int meanDegree;
+
+    private String[] rows;
+    private CitationGraph trefGraph;
+    private CitationGraph orefGraph;
+    private ForkJoinPool pool;
+    private int numCores;
+
+    @Setup
+    public void setup() {
+        rows = Fixtures.citationRows(numNodes, meanDegree, new Random(Fixtures.SEED));
+        numCores = Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(numCores);
+        trefGraph = readGraph();
+        orefGraph = trefGraph.transpose(pool, numCores);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public CitationGraph readGraph() {
+        CitationGraph.Builder builder = new CitationGraph.Builder(numNodes);
+        for (int row = 0; row < numNodes; row++) {
+            builder.setRow(row, rows[row]);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public CitationGraph transpose() {
+        return trefGraph.transpose(pool, numCores);
+    }
+
+    @Benchmark
+    public PageRankSolver.Result solve() {
+        return new PageRankSolver(PageRank.alpha, 1e-10, 100, 4096, pool).solve(orefGraph);
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import cords.CollectionReader;
+import org.openjdk.jmh.annotations.*;
+import schemas.ParsedArticle;
+import util.TextSanitizer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text normalization (CollectionReader.parse(), single pass and regular expressions) and streaming parsing of the
+ * article JSON files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParsingBenchmark {
+    @Param({"12", "250"})
+    public int textWords;
+
+    @Param({"20"})
+    public int bodyLines;
+
+    private String text;
+    private Path folder;
+    private Path article;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(Fixtures.SEED);
+        String[] vocabulary = Fixtures.vocabulary(5000, random);
+        text = Fixtures.text(vocabulary, textWords, random);
+        folder = Files.createTempDirectory("bench-articles");
+        article = Fixtures.article(folder, vocabulary, 40, 60, random);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(folder);
+    }
+
+    @Benchmark
+    public String parse() {
+        return CollectionReader.parse(text);
+    }
+
+    @Benchmark
+    public String sanitizeRegex() {
+        return TextSanitizer.sanitizeRegex(text);
+    }
+
+    @Benchmark
+    public ParsedArticle parseArticle() {
+        return CollectionReader.parseArticle(article, bodyLines);
+    }
+}
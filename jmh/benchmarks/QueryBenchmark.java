@@ -0,0 +1,77 @@
+package benchmarks;
+
+import lucene.IdxReader;
+import lucene.IdxSearcher;
+import models.*;
+import org.openjdk.jmh.annotations.*;
+import schemas.TopDocument;
+import schemas.TopicQuery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query of a topic with each retrieval model over a synthetic index (see Fixtures.index()). Each invocation queries
+ * the next topic of the fixture.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+    @Param({"boolean", "vector", "probability", "pagerank"})
+    public String model;
+
+    @Param({"20000"})
+    public int numDocs;
+
+    @Param({"100"})
+    public int topN;
+
+    @Param({"32"})
+    public int dimension;
+
+    private Path folder;
+    private IdxReader reader;
+    private RetrievalModel retrievalModel;
+    private List<TopicQuery> topics;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(Fixtures.SEED);
+        String[] vocabulary = Fixtures.vocabulary(20000, random);
+        folder = Files.createTempDirectory("bench-index");
+        reader = Fixtures.index(folder, vocabulary, numDocs, dimension, random);
+        IdxSearcher searcher = new IdxSearcher(reader);
+        retrievalModel = switch (model) {
+            case "boolean" -> new BooleanModel(reader, searcher);
+            case "vector" -> new VectorModel(reader, searcher, 0.1, 0.8, 0.5, 5);
+            case "probability" -> new ProbabilityModel(reader, searcher, 2, new String[]{"title", "abstract"});
+            case "pagerank" -> new PageRankModel(reader, searcher, true);
+            default -> throw new IllegalArgumentException("Unknown model " + model);
+        };
+        topics = Fixtures.topics(vocabulary, 50, dimension, random);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        Fixtures.delete(folder);
+    }
+
+    @Benchmark
+    public List<TopDocument> query() {
+        TopicQuery topic = topics.get(next);
+        next = (next + 1) % topics.size();
+        List<TopDocument> topDocuments = retrievalModel.query(topic, topN);
+        topDocuments.forEach(TopDocument::cordUID);
+        return topDocuments;
+    }
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.openjdk.jmh.annotations.*;
+import schemas.CompressedRefsVector;
+import schemas.Embedding;
+import schemas.ReferencesVector;
+import util.AuxiliarFunctions;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions of the embeddings (text and binary) and of the references vectors of PageRank.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorBenchmark {
+    private static final String SEP = " ";
+
+    @Param({"768"})
+    public int dimension;
+
+    @Param({"100000"})
+    public int numDocs;
+
+    @Param({"40"})
+    public int numReferences;
+
+    private float[] vector;
+    private String vectorString;
+    private ArrayRealVector realVector;
+    private CompressedRefsVector refsVector;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(Fixtures.SEED);
+        vector = Fixtures.embedding(dimension, random);
+        vectorString = new Embedding(vector).toString();
+        realVector = AuxiliarFunctions.string2vector(vectorString, SEP);
+        refsVector = new CompressedRefsVector(numDocs);
+        for (int i = 0; i < numReferences; i++) {
+            refsVector.add(random.nextInt(numDocs), 1 + random.nextInt(3));
+        }
+    }
+
+    @Benchmark
+    public Embedding embeddingFromString() {
+        return new Embedding(vectorString);
+    }
+
+    @Benchmark
+    public Embedding embeddingFromFloats() {
+        return new Embedding(vector);
+    }
+
+    @Benchmark
+    public ArrayRealVector string2vector() {
+        return AuxiliarFunctions.string2vector(vectorString, SEP);
+    }
+
+    @Benchmark
+    public String vector2string() {
+        return AuxiliarFunctions.vector2string(realVector, SEP);
+    }
+
+    @Benchmark
+    public ReferencesVector toReferencesVector() {
+        return refsVector.toReferencesVector(true);
+    }
+}
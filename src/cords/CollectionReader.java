@@ -1,9 +1,12 @@
 package cords;
 
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
-import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
@@ -14,6 +17,7 @@ import formats.Topics;
 import lucene.IdxReader;
 import schemas.*;
 import util.ObjectReaderUtils;
+import util.TextSanitizer;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -35,6 +39,9 @@ public class CollectionReader {
     METADATA_FILENAME       [String]  : Relative path from COLLECTION_PATH to the metadata.csv file.
     QEMBEDDINGS_FILENAME    [String]  : Relative path from COLLECTION_PATH to the query embeddings.json file.
     DOCEMBEDDINGS_FILENAME  [String]  : Relative path from COLLECTION_PATH to the document embeddings CSV file.
+    DOC_EMBEDDINGS_VECTORS_FILENAME [String] : Relative path from COLLECTION_PATH to the binary embeddings file.
+    DOC_EMBEDDINGS_INDEX_FILENAME   [String] : Relative path from COLLECTION_PATH to the cordUID index of the binary
+                                               embeddings file.
     TOPICS_FILENAME         [String]  : Relative path from COLLECTION_PATH to the topics set XML file.
     RELJUDGS_FILENAME       [String]  : Relative path form COLLECTION_PATH to the relevance judgements TXT file.
      */
@@ -43,16 +50,18 @@ public class CollectionReader {
     public static final String METADATA_FILENAME = "metadata.csv";
     public static final String QUERY_EMBEDDINGS_FILENAME = "topics-embeddings.json";
     public static final String DOC_EMBEDDINGS_FILENAME = "embeddings.csv";
+    public static final String DOC_EMBEDDINGS_VECTORS_FILENAME = "embeddings.bin";
+    public static final String DOC_EMBEDDINGS_INDEX_FILENAME = "embeddings.idx";
     public static final String TOPICS_FILENAME = "topics-set.xml";
     public static final String RELEVANCE_JUDGEMENTS_FILENAME = "relevance-judgements.txt";
 
     /* Global variables (readers):
-    ARTICLE_READER     [ObjectReader]  : JSON reader for the files in `2020-07-16/document_parses/`
+    JSON_FACTORY       [JsonFactory]   : Factory of the streaming JSON parsers for the files in `2020-07-16/document_parses/`
     TOPICS_READER      [ObjectReader]  : XML reader for `2020-07-16/topics-set.xml`
     METADATA_SCHEMA    [CsvSchema]     : CSV schema for 2020-07-16/metadata.csv.
     METADATA_READER    [ObjectReader]  : Relative path from COLLECTION_PATH to the document embeddings CSV file.
      */
-    public static final ObjectReader ARTICLE_READER = JsonMapper.builder().findAndAddModules().build().readerFor(Article.class);
+    public static final JsonFactory JSON_FACTORY = new JsonFactory();
     public static final ObjectReader TOPICS_READER = XmlMapper.builder().findAndAddModules().build().readerFor(Topics.class);
     public static final CsvSchema METADATA_SCHEMA = CsvSchema.emptySchema().withHeader().withArrayElementSeparator("; ");
     public static final ObjectReader METADATA_READER = new CsvMapper().readerFor(Metadata.class).with(METADATA_SCHEMA);
@@ -60,17 +69,14 @@ public class CollectionReader {
     // ------------------------------------------------ document_parses ------------------------------------------------
 
     /**
-     * Deletes invalid string sequences in order to allow the function parseQuery() to parse it.
+     * Deletes invalid string sequences in order to allow the function parseQuery() to parse it (special characters,
+     * stopwords at the beginning of the words and repeated whitespaces), see TextSanitizer.
      *
      * @param text Text to validate.
      * @return Parsed text.
      */
     public static String parse(String text) {
-        String parsedText = text.replaceAll("\\[|\\]|\\(|\\)|/|-|\\'|\\:|\\\\|\"|\\}|\\{|\\*|\\?|\\!|\\^|\\~|\\+|\\;", " ");
-        parsedText = " " + parsedText;
-        parsedText = parsedText.replaceAll(" and| or| the| at| of| a| in| OR| AND", " ");
-        parsedText = String.join(" ", parsedText.strip().split("\\s+"));
-        return parsedText;
+        return TextSanitizer.sanitize(text);
     }
 
     /**
@@ -102,10 +108,27 @@ public class CollectionReader {
      * @return ParsedArticle.
      */
     public static ParsedArticle parseArticle(Path articlePath, int bodyLines) {
-        // -------------------------- READING --------------------------
-        Article article;
-        try {
-            article = ARTICLE_READER.readValue(articlePath.toFile());
+        // ------------------------ STREAMING ------------------------
+        // only metadata.authors, bib_entries and the first bodyLines paragraphs of body_text are read, the rest of the
+        // JSON content is skipped without binding it
+        StringBuilder bodyBuilder = new StringBuilder();
+        Map<String, ParsedArticle.ParsedReference> parsedReferences = new HashMap<>();
+        Map<String, Integer> citeCounts = new HashMap<>();
+        List<Article.Author> articleAuthors = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(articlePath.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("JSON file " + articlePath.toString() + " does not contain an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "metadata" -> articleAuthors = streamMetadataAuthors(parser);
+                    case "body_text" -> streamBody(parser, bodyLines, bodyBuilder, citeCounts);
+                    case "bib_entries" -> streamBibEntries(parser, parsedReferences);
+                    default -> parser.skipChildren();
+                }
+            }
         } catch (IOException e) {
             System.out.println("IOException while reading JSON file " + articlePath.toString());
             e.printStackTrace();
@@ -113,29 +136,12 @@ public class CollectionReader {
         }
 
         // -------------------------- PARSING --------------------------
-        StringBuilder bodyBuilder = new StringBuilder();
-        Map<String, ParsedArticle.ParsedReference> parsedReferences = new HashMap<>();
-
-        // add bibliography entries to parsedReferences
-        for (Map.Entry<String, Article.Reference> bibEntry : article.bib_entries().entrySet()) {
-            String refTitle = parse(bibEntry.getValue().title());
-            if (refTitle.length() == 0) {
-                continue;
-            }
-            String refAuthors = parseAuthors(bibEntry.getValue().authors(), ParsedArticle.NUM_AUTHORS_PARSED);
-            if (refAuthors.length() == 0) {
-                continue;
-            }
-            parsedReferences.put(bibEntry.getKey(), new ParsedArticle.ParsedReference(refTitle, refAuthors));
-        }
-
-        // add article text and count references to update the counts
-        List<Article.Content> paragraphs = article.body_text().subList(0, Math.min(article.body_text().size(), bodyLines));
-        for (Article.Content paragraph : paragraphs) {
-            bodyBuilder.append(paragraph.section() + "\n" + paragraph.text() + "\n");
-            for (Article.Content.Cite cite : paragraph.cite_spans()) {
-                if (parsedReferences.containsKey(cite.ref_id())) {
-                    parsedReferences.get(cite.ref_id()).increaseCount();
+        // update the counts of the references cited in the body (bib_entries may appear after body_text)
+        for (Map.Entry<String, Integer> citeCount : citeCounts.entrySet()) {
+            ParsedArticle.ParsedReference reference = parsedReferences.get(citeCount.getKey());
+            if (!Objects.isNull(reference)) {
+                for (int i = 0; i < citeCount.getValue(); i++) {
+                    reference.increaseCount();
                 }
             }
         }
@@ -144,8 +150,8 @@ public class CollectionReader {
 
         // add authors last name
         String authors;
-        if (!Objects.isNull(article.metadata().authors())) {
-            authors = parseAuthors(article.metadata().authors(), article.metadata().authors().size());
+        if (!Objects.isNull(articleAuthors)) {
+            authors = parseAuthors(articleAuthors, articleAuthors.size());
         } else {
             authors = "";
         }
@@ -153,6 +159,159 @@ public class CollectionReader {
         return new ParsedArticle(null, null, body, authors, references);
     }
 
+    /**
+     * Reads the authors of the metadata object of an article (the parser must be at its first token).
+     * @returns List of authors or null if the metadata has no authors.
+     */
+    private static List<Article.Author> streamMetadataAuthors(JsonParser parser) throws IOException {
+        List<Article.Author> authors = null;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals("authors")) {
+                authors = streamAuthors(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return authors;
+    }
+
+    /**
+     * Reads a list of authors keeping only their last names (the parser must be at its first token).
+     * @returns List of authors or null if the value is not a list.
+     */
+    private static List<Article.Author> streamAuthors(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<Article.Author> authors = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            String last = null;
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if (field.equals("last")) {
+                        last = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+            authors.add(new Article.Author(null, null, last));
+        }
+        return authors;
+    }
+
+    /**
+     * Appends the section and text of the first bodyLines paragraphs of body_text to the body and counts their cites,
+     * skipping the rest of paragraphs (the parser must be at the first token of body_text).
+     */
+    private static void streamBody(JsonParser parser, int bodyLines, StringBuilder bodyBuilder,
+                                   Map<String, Integer> citeCounts) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        int numParagraph = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (numParagraph >= bodyLines || parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                numParagraph++;
+                continue;
+            }
+            String text = null;
+            String section = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "text" -> text = parser.getValueAsString();
+                    case "section" -> section = parser.getValueAsString();
+                    case "cite_spans" -> streamCites(parser, citeCounts);
+                    default -> parser.skipChildren();
+                }
+            }
+            bodyBuilder.append(section + "\n" + text + "\n");
+            numParagraph++;
+        }
+    }
+
+    private static void streamCites(JsonParser parser, Map<String, Integer> citeCounts) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (field.equals("ref_id") && parser.currentToken() == JsonToken.VALUE_STRING) {
+                    citeCounts.merge(parser.getText(), 1, Integer::sum);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds to parsedReferences the bibliography entries with non-empty title and authors (the parser must be at the
+     * first token of bib_entries).
+     */
+    private static void streamBibEntries(JsonParser parser, Map<String, ParsedArticle.ParsedReference> parsedReferences)
+            throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String title = null;
+            List<Article.Author> authors = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "title" -> title = parser.getValueAsString();
+                    case "authors" -> authors = streamAuthors(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+
+            // same entry can appear twice: the last one is kept
+            parsedReferences.remove(key);
+            if (Objects.isNull(title) || Objects.isNull(authors)) {
+                continue;
+            }
+            String refTitle = parse(title);
+            if (refTitle.length() == 0) {
+                continue;
+            }
+            String refAuthors = parseAuthors(authors, ParsedArticle.NUM_AUTHORS_PARSED);
+            if (refAuthors.length() == 0) {
+                continue;
+            }
+            parsedReferences.put(key, new ParsedArticle.ParsedReference(refTitle, refAuthors));
+        }
+    }
+
     /**
      * Given multiple Article instances, parses and merges their contents to obtain an unique body,
      * set of authors and set of references.
@@ -220,6 +379,25 @@ public class CollectionReader {
         return metadata;
     }
 
+    /**
+     * Streams the rows of the metadata.csv file with the given structure in Metadata.java, so they can be consumed
+     * while the file is being read.
+     *
+     * @returns Iterator over the Metadata objects of the file (it must be closed once it is consumed).
+     */
+    public static final MappingIterator<Metadata> streamMetadata() {
+        Path metadataPath = COLLECTION_PATH.resolve(METADATA_FILENAME);
+        MappingIterator<Metadata> metadata;
+        try {
+            metadata = ObjectReaderUtils.readValues(metadataPath, METADATA_READER);
+        } catch (IOException e) {
+            System.out.println("IOException while reading metadata in " + metadataPath.toString());
+            e.printStackTrace();
+            return null;
+        }
+        return metadata;
+    }
+
 
     // ------------------------------------------------- topics-set ---------------------------------------------------
 
@@ -293,13 +471,31 @@ public class CollectionReader {
     }
 
 
-    public static Map<String, Embedding> readDocEmbeddings() {
-        Stream<String> stream = streamDocEmbeddings();
-        Map<String, Embedding> docEmbeddings = new HashMap<>();
-        for (Iterator<String> it = stream.iterator(); it.hasNext(); ) {
-            String[] lineContent = it.next().split(",");
-            Embedding embedding = new Embedding(Arrays.copyOfRange(lineContent, 1, lineContent.length));
-            docEmbeddings.put(lineContent[0], embedding);
+    /**
+     * Opens the memory-mapped store of the document embeddings. The embeddings CSV file is converted to the binary
+     * format of the store (see EmbeddingStore.convert()) the first time and whenever the CSV file has changed since the
+     * last conversion (e.g. a new release of the collection, see EmbeddingStore.isCurrent()).
+     *
+     * @returns EmbeddingStore with the embedding of each cordUID.
+     */
+    public static EmbeddingStore readDocEmbeddings() {
+        Path vectorsPath = COLLECTION_PATH.resolve(DOC_EMBEDDINGS_VECTORS_FILENAME);
+        Path indexPath = COLLECTION_PATH.resolve(DOC_EMBEDDINGS_INDEX_FILENAME);
+        EmbeddingStore docEmbeddings = null;
+        try {
+            Path csvPath = COLLECTION_PATH.resolve(DOC_EMBEDDINGS_FILENAME);
+            if (!EmbeddingStore.isCurrent(csvPath, vectorsPath, indexPath)) {
+                System.out.println("Converting document embeddings of " + csvPath + " to " + vectorsPath);
+                long start = System.currentTimeMillis();
+                int numRows = EmbeddingStore.convert(csvPath, vectorsPath, indexPath);
+                System.out.println(numRows + " document embeddings converted in " +
+                        (System.currentTimeMillis() - start) + " ms");
+            }
+            docEmbeddings = new EmbeddingStore(vectorsPath, indexPath);
+        } catch (IOException e) {
+            System.out.println("IOException while reading document embeddings store " + vectorsPath.toString());
+            e.printStackTrace();
+            System.exit(-1);
         }
         return docEmbeddings;
     }
@@ -308,11 +504,11 @@ public class CollectionReader {
     // --------------------------------------------- relevance-judgements ----------------------------------------------
 
     /**
-     * Reads and parses relevance judgements TXT file.
+     * Reads and parses relevance judgements TXT file, streaming it line by line.
      *
-     * @returns Map object where each key is a topic ID with its corresponding list of relevant documents identifiers.
+     * @returns Qrels with the graded relevance of each judged document of each topic of the file.
      */
-    public static final Map<Integer, List<String>> readRelevanceJudgements() {
+    public static final Qrels readRelevanceJudgements() {
         // Define relevance judgments path
         Path relevanceJudgementsPath = COLLECTION_PATH.resolve(RELEVANCE_JUDGEMENTS_FILENAME);
 
@@ -320,41 +516,28 @@ public class CollectionReader {
         CsvSchema schema = CsvSchema.builder().setColumnSeparator(' ').addColumn("topicID").addColumn("rank").addColumn("docID").addColumn("score").build();
         ObjectReader reader = new CsvMapper().readerFor(RelevanceJudgements.class).with(schema);
 
-        // Creating a list with each relevance judgments using the defined structure in RelevanceJudgements.java
-        // (topicID, docID, score)
-        List<RelevanceJudgements> docsRelevance;
-        try {
-            docsRelevance = ObjectReaderUtils.readAllValues(relevanceJudgementsPath, reader);
+        // Add each relevance judgement (topicID, docID, score) of the file, whatever its topics are
+        Qrels qrels = new Qrels();
+        try (MappingIterator<RelevanceJudgements> judgements = ObjectReaderUtils.readValues(relevanceJudgementsPath, reader)) {
+            while (judgements.hasNext()) {
+                RelevanceJudgements judgement = judgements.next();
+                qrels.add(judgement.topicID(), judgement.docID(), judgement.score());
+            }
         } catch (IOException e) {
             System.out.println("IOException while reading relevance judgments in " + relevanceJudgementsPath.toString());
             e.printStackTrace();
             return null;
         }
-
-        // Create the Map object where each topic ID is stored with its corresponding list of relevant documents identifiers
-        Map<Integer, List<String>> topicRelevDocs = new HashMap<>();
-        for (int i = 1; i < 51; i++) {
-            List<String> emptyList = new ArrayList<>();    // firstly create an empty list
-            topicRelevDocs.put(i, emptyList);                    // add to the map object the index i with the empty list
-        }
-
-        // Read the relevance judgments list and add in the list of each topicID the corresponding document identifier
-        for (RelevanceJudgements doc : docsRelevance) {
-            // We do not care if the score is 1 or 2 to assess its relevance
-            if (doc.score() != 0) {
-                topicRelevDocs.get(doc.topicID()).add(doc.docID());
-            }
-        }
-        return topicRelevDocs;
+        return qrels;
     }
 
     public static void main(String[] args) {
 //        Map<Integer, Embedding> topicEmbeddings = parseTopicEmbeddings();
 //        System.out.println(topicEmbeddings.get(0).toString());
         IdxReader reader = new IdxReader(INDEX_FOLDERNAME);
-        String v = reader.document(0).get("embedding");
+        float[] v = reader.embedding(0);
 
-        System.out.println(v);
+        System.out.println(Arrays.toString(v));
     }
 
 }
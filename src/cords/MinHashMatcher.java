@@ -0,0 +1,291 @@
+package cords;
+
+import lucene.IdxReader;
+import lucene.IdxSearcher;
+import org.apache.lucene.document.Document;
+import schemas.ParsedArticle;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static cords.CollectionReader.parse;
+import static cords.PoolIndexing.INDEX_FOLDERNAME;
+
+/**
+ * Fuzzy title matcher for the references resolution based on MinHash signatures and locality sensitive hashing (LSH),
+ * as an alternative to the Lucene search + word-mismatch verification of ReferenceResolver.
+ *
+ * 1) Every indexed title is converted to a sorted array of distinct token ids (see TitleIndex.tokens()).
+ * 2) Its MinHash signature (numBands * rowsPerBand universal hashes) is split in bands and each band is hashed to a
+ * bucket. Buckets are stored per band as a sorted long[] of (bucket << 32 | cordID), so lookups are binary searches
+ * over primitive arrays.
+ * 3) A reference title is a candidate of every document that shares at least one bucket with it, and candidates are
+ * verified with the exact Jaccard similarity of the token id arrays.
+ *
+ * Global variables:
+ *      numBands      [int]                   : Number of LSH bands.
+ *      rowsPerBand   [int]                   : Number of MinHash values per band.
+ *      threshold     [double]                : Minimum Jaccard similarity between the reference and document titles.
+ *      m             [int]                   : Maximum number of documents matched with each reference.
+ *      dictionary    [Map<String, Integer>]  : Token id of each title token of the collection.
+ *      titleTokens   [int[][]]               : Sorted token ids of the title of each cordID.
+ *      bands         [long[][]]              : Sorted (bucket, cordID) pairs of each band.
+ */
+public class MinHashMatcher {
+    public static final int DEFAULT_NUM_BANDS = 16;
+    public static final int DEFAULT_ROWS_PER_BAND = 4;
+    public static final double DEFAULT_THRESHOLD = 0.8;
+    private static final long PRIME = (1L << 31) - 1;
+
+    private final int numBands;
+    private final int rowsPerBand;
+    private final double threshold;
+    private final int m;
+    private final long[] hashA;
+    private final long[] hashB;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final int[][] titleTokens;
+    private final long[][] bands;
+
+    public MinHashMatcher(IdxReader ireader, int numBands, int rowsPerBand, double threshold, int m) {
+        this.numBands = numBands;
+        this.rowsPerBand = rowsPerBand;
+        this.threshold = threshold;
+        this.m = m;
+
+        Random random = new Random(42);
+        hashA = new long[numBands * rowsPerBand];
+        hashB = new long[numBands * rowsPerBand];
+        for (int i = 0; i < hashA.length; i++) {
+            hashA[i] = 1 + random.nextInt((int) PRIME - 1);
+            hashB[i] = random.nextInt((int) PRIME);
+        }
+
+        // 1) read titles and assign token ids in cordID order
+        String[][] titles = new String[ireader.numCordIDs()][];
+        Arrays.fill(titles, new String[0]);     // unused cordIDs (deleted documents)
+        Set<String> fields = Set.of("title", "cordID");
+        ireader.liveDocIDs().parallel().forEach(
+                docID -> {
+                    Document doc = ireader.document(docID, fields);
+                    String title = Objects.isNull(doc.get("title")) ? "" : doc.get("title");
+                    titles[Integer.parseInt(doc.get("cordID"))] = TitleIndex.tokens(parse(title));
+                }
+        );
+        titleTokens = new int[titles.length][];
+        for (int cordID = 0; cordID < titles.length; cordID++) {
+            int[] ids = new int[titles[cordID].length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = dictionary.computeIfAbsent(titles[cordID][i], token -> dictionary.size());
+            }
+            Arrays.sort(ids);
+            titleTokens[cordID] = ids;
+        }
+
+        // 2) signatures and LSH buckets of each band
+        int[][] signatures = new int[titles.length][];
+        IntStream.range(0, titles.length).parallel().forEach(
+                cordID -> signatures[cordID] = signature(titleTokens[cordID])
+        );
+        bands = new long[numBands][];
+        IntStream.range(0, numBands).parallel().forEach(
+                band -> {
+                    long[] entries = new long[titles.length];
+                    int size = 0;
+                    for (int cordID = 0; cordID < titles.length; cordID++) {
+                        if (titleTokens[cordID].length > 0) {
+                            entries[size++] = pack(bucket(signatures[cordID], band), cordID);
+                        }
+                    }
+                    entries = Arrays.copyOf(entries, size);
+                    Arrays.sort(entries);
+                    bands[band] = entries;
+                }
+        );
+    }
+
+    private int[] signature(int[] tokenIds) {
+        int[] signature = new int[hashA.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int i = 0; i < hashA.length; i++) {
+            for (int tokenId : tokenIds) {
+                int value = (int) ((hashA[i] * tokenId + hashB[i]) % PRIME);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private int bucket(int[] signature, int band) {
+        int hash = band;
+        for (int row = band * rowsPerBand; row < (band + 1) * rowsPerBand; row++) {
+            hash = 31 * hash + signature[row];
+        }
+        return hash;
+    }
+
+    private static long pack(int bucket, int cordID) {
+        return ((long) bucket << 32) | cordID;
+    }
+
+    /**
+     * Returns the cordIDs (at most m, sorted by decreasing Jaccard similarity) whose title is similar enough to the
+     * reference title.
+     * @param parsedTitle Title of the reference, already normalized with CollectionReader.parse().
+     */
+    public int[] match(String parsedTitle) {
+        // token ids of the reference: unknown tokens do not appear in any title but count for the Jaccard union
+        String[] tokens = TitleIndex.tokens(parsedTitle);
+        int[] known = new int[tokens.length];
+        int numKnown = 0;
+        for (String token : tokens) {
+            Integer id = dictionary.get(token);
+            if (id != null) {
+                known[numKnown++] = id;
+            }
+        }
+        int numUnknown = tokens.length - numKnown;
+        if (numKnown == 0 || numKnown < threshold * tokens.length) {
+            return new int[0];
+        }
+        known = Arrays.copyOf(known, numKnown);
+        Arrays.sort(known);
+
+        // candidates sharing at least one bucket
+        int[] signature = signature(known);
+        Set<Integer> candidates = new HashSet<>();
+        for (int band = 0; band < numBands; band++) {
+            long[] entries = bands[band];
+            int bucket = bucket(signature, band);
+            for (int i = lowerBound(entries, pack(bucket, 0)); i < entries.length && (int) (entries[i] >>> 32) == bucket; i++) {
+                candidates.add((int) entries[i]);
+            }
+        }
+
+        // exact Jaccard verification
+        List<double[]> matches = new ArrayList<>();
+        for (int cordID : candidates) {
+            double jaccard = jaccard(known, numUnknown, titleTokens[cordID]);
+            if (jaccard >= threshold) {
+                matches.add(new double[]{jaccard, cordID});
+            }
+        }
+        matches.sort((x, y) -> x[0] != y[0] ? Double.compare(y[0], x[0]) : Double.compare(x[1], y[1]));
+        return matches.stream().limit(m).mapToInt(match -> (int) match[1]).toArray();
+    }
+
+    private static int lowerBound(long[] entries, long key) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Jaccard similarity between two sorted arrays of token ids, where the first set has numUnknown more tokens that
+     * are not in the second one.
+     */
+    private static double jaccard(int[] tokens1, int numUnknown, int[] tokens2) {
+        int i = 0;
+        int j = 0;
+        int intersection = 0;
+        while (i < tokens1.length && j < tokens2.length) {
+            if (tokens1[i] == tokens2[j]) {
+                intersection++;
+                i++;
+                j++;
+            } else if (tokens1[i] < tokens2[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = tokens1.length + numUnknown + tokens2.length - intersection;
+        return (double) intersection / union;
+    }
+
+    public int dictionarySize() {
+        return dictionary.size();
+    }
+
+
+    /**
+     * Compares the MinHash matcher with the Lucene-based matching on the same index: both engines resolve the distinct
+     * references of the first documents of the index and we report the throughput of each one and the recall of
+     * MinHash with respect to Lucene (fraction of Lucene matches also found by MinHash).
+     *
+     * Usage: MinHashMatcher [numDocs] [numBands] [rowsPerBand] [threshold]
+     */
+    public static void main(String[] args) {
+        int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int numBands = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_NUM_BANDS;
+        int rowsPerBand = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROWS_PER_BAND;
+        double threshold = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_THRESHOLD;
+        int m = 2;
+
+        IdxReader ireader = new IdxReader(INDEX_FOLDERNAME);
+        IdxSearcher isearcher = new IdxSearcher(ireader);
+
+        long start = System.currentTimeMillis();
+        MinHashMatcher matcher = new MinHashMatcher(ireader, numBands, rowsPerBand, threshold, m);
+        long end = System.currentTimeMillis();
+        System.out.println("MinHash index with " + matcher.dictionarySize() + " tokens built in " + (end-start));
+
+        // distinct references of the sample
+        Set<String> references = new LinkedHashSet<>();
+        for (int docID : ireader.liveDocIDs().limit(numDocs).toArray()) {
+            String content = ireader.document(docID, Set.of("references")).get("references");
+            if (Objects.isNull(content) || content.length() == 0) {
+                continue;
+            }
+            for (String tref : content.split(ParsedArticle.REFERENCES_SEPARATOOR)) {
+                String[] trefItems = tref.split(ParsedArticle.ParsedReference.ITEM_REFS_SEPARATOR);
+                references.add(trefItems[0] + ReferenceResolver.KEY_SEPARATOR + trefItems[1]);
+            }
+        }
+        System.out.println("Comparing matching engines over " + references.size() + " distinct references");
+
+        ReferenceResolver luceneResolver = new ReferenceResolver(ireader, isearcher, m, null, null);
+        Map<String, int[]> luceneMatches = new HashMap<>();
+        start = System.currentTimeMillis();
+        for (String reference : references) {
+            String[] items = reference.split(ReferenceResolver.KEY_SEPARATOR);
+            luceneMatches.put(reference, luceneResolver.resolve(items[0], items[1]));
+        }
+        long luceneTime = Math.max(1, System.currentTimeMillis() - start);
+
+        Map<String, int[]> minHashMatches = new HashMap<>();
+        start = System.currentTimeMillis();
+        for (String reference : references) {
+            minHashMatches.put(reference, matcher.match(reference.split(ReferenceResolver.KEY_SEPARATOR)[0]));
+        }
+        long minHashTime = Math.max(1, System.currentTimeMillis() - start);
+
+        long luceneTotal = 0;
+        long minHashTotal = 0;
+        long common = 0;
+        for (String reference : references) {
+            Set<Integer> lucene = new HashSet<>();
+            Arrays.stream(luceneMatches.get(reference)).forEach(lucene::add);
+            luceneTotal += lucene.size();
+            minHashTotal += minHashMatches.get(reference).length;
+            common += Arrays.stream(minHashMatches.get(reference)).filter(lucene::contains).count();
+        }
+
+        System.out.println("Lucene  : " + luceneTotal + " matches in " + luceneTime + " ms (" +
+                1000 * references.size() / luceneTime + " references/s)");
+        System.out.println("MinHash : " + minHashTotal + " matches in " + minHashTime + " ms (" +
+                1000 * references.size() / minHashTime + " references/s)");
+        System.out.println("MinHash recall w.r.t. Lucene: " + (luceneTotal == 0 ? 0 : (double) common / luceneTotal));
+        ireader.close();
+    }
+}
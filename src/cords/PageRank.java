@@ -3,21 +3,20 @@ package cords;
 import lucene.IdxReader;
 import lucene.IdxSearcher;
 import lucene.IdxWriter;
-import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.StoredField;
-import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
-import org.apache.lucene.search.*;
+import org.apache.lucene.document.DoubleDocValuesField;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
 import schemas.*;
 
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static util.AuxiliarFunctions.*;
 import static cords.PoolIndexing.INDEX_FOLDERNAME;
@@ -33,6 +32,13 @@ import static cords.PoolIndexing.INDEX_FOLDERNAME;
  * orefVec  : Inverse references vector of a set vector. It gives info about which docs point the set vector.
  * trefVec  : References vector of a set vector. It gives info about which docs are pointed by the set vector.
  *
+ * Both vectors are stored in the index as sparse "cordID:count" sequences and loaded in memory as a CitationGraph
+ * (references graph for trefVec, inverse references graph for orefVec).
+ *
+ * All the graph features (trefVec, orefVec, binaryPageRank and countPageRank) are doc values fields created empty by
+ * PoolIndexing and updated in place, keyed by cordID, so no stage rewrites the index. Before a stage modifies the
+ * index, its last commit point is protected with a persistent snapshot, which is released when the stage finishes.
+ *
  * key: Please understand these definitions in order to clearly read the code.
  */
 public class PageRank {
@@ -44,45 +50,69 @@ public class PageRank {
     private IdxWriter iwriter;
     private IdxReader ireader;
     private IdxSearcher isearcher;
+    private ReferenceResolver resolver;
 
-    /* Global variables (paths)
-    SAVE_INDEX_FOLDERNAME    [String]   : Path where a save copy of the Apache Lucene index is stored (in case of errors).
-    TEMP_INDEX_FOLDERNAME    [String]   : Path where we store a temporary copy of the index that is being read.
+    /* Global variables (commits)
+    commitEvery    [int]             : Number of searched documents between two commits of the searching stage (so it
+                                       can be resumed from the last commit).
+    searchedDocs   [AtomicInteger]   : Number of documents searched by all the workers.
      */
-    private final String TEMP_PREFFIX = "temp";
-    private final String SAVE_PREFFIX = "save";
-    private final String SAVE_INDEX_FOLDERNAME = SAVE_PREFFIX + INDEX_FOLDERNAME;
-    private final String TEMP_INDEX_FOLDERNAME = TEMP_PREFFIX + INDEX_FOLDERNAME;
+    private int commitEvery = 10000;
+    private AtomicInteger searchedDocs = new AtomicInteger();
 
 
     /* Global variables:
-    VECTOR_ITEM_SEP   [String]              : String separator used to convert a vector to a string sequence.
-    countPageRank     [ArrayRealVector]     : PageRank vector considering the references count.
-    binaryPageRank    [ArrayRealVector]     : PageRank vector considering only binary references.
+    VECTOR_ITEM_SEP   [String]     : String separator used to convert a vector to a string sequence.
+    countPageRank     [double[]]   : PageRank vector (indexed by cordID) considering the references count.
+    binaryPageRank    [double[]]   : PageRank vector (indexed by cordID) considering only binary references.
      */
     public static String VECTOR_ITEM_SEP = " ";
-    private ArrayRealVector countPageRank;
-    private ArrayRealVector binaryPageRank;
+    private double[] countPageRank;
+    private double[] binaryPageRank;
 
     /*
     Vectors notation to store them as String.
-    trefCNVec           : Count (C) normalized (N) references vector (t).
-    trefBNVec           : Binary (B) normalized (B) references vector (t).
-    orefCNVec           : Count (C) normalized (N) inverse references vector (o).
-    orefBNvec           : Binary (B) normalized (N) inverse references vector (o).
+    trefVec             : Sparse references vector (t) with the citation count of each reference.
+    orefVec             : Sparse inverse references vector (o) with the citation count of each reference.
+    Normalized vectors are not stored: PageRank normalization is applied on the fly over the sparse graph.
      */
 
     /*
     PageRank computing parameters:
-    m          [int]   : Number of topDocs obtained in references searching that are used to create a match between a bib entry and a doc.
-    iterations [int]   : Number of iterations of PageRank.
-    alpha      [float] : PageRank parameter that defines the random probability.
+    m          [int]    : Number of topDocs obtained in references searching that are used to create a match between a bib entry and a doc.
+    iterations [int]    : Maximum number of iterations of PageRank.
+    tolerance  [double] : L1 residual between two iterations under which PageRank has converged.
+    blockSize  [int]    : Number of rows of the inverse references graph computed by each parallel task.
+    alpha      [float]  : PageRank parameter that defines the random probability.
+    matching   [Matching] : Engine used to match the references that are not found in the exact-title index.
+    numBands, rowsPerBand, threshold : LSH bands, MinHash values per band and minimum Jaccard similarity of the
+                          MinHashMatcher (only used with the MINHASH matching).
      */
     int m = 2;
     private int iterations = 100;
+    private double tolerance = 1e-10;
+    private int blockSize = 4096;
     public static float alpha = 0.1F;
-    private int numCoresInvert = 8;
-    private int nbatchesInvert = 16;
+    private ReferenceResolver.Matching matching = ReferenceResolver.Matching.LUCENE;
+    private int numBands = MinHashMatcher.DEFAULT_NUM_BANDS;
+    private int rowsPerBand = MinHashMatcher.DEFAULT_ROWS_PER_BAND;
+    private double threshold = MinHashMatcher.DEFAULT_THRESHOLD;
+
+    public PageRank() {
+    }
+
+    /**
+     * @param matching Engine used to match the references that are not found in the exact-title index.
+     * @param numBands Number of LSH bands of the MinHashMatcher.
+     * @param rowsPerBand Number of MinHash values per band of the MinHashMatcher.
+     * @param threshold Minimum Jaccard similarity between reference and document titles of the MinHashMatcher.
+     */
+    public PageRank(ReferenceResolver.Matching matching, int numBands, int rowsPerBand, double threshold) {
+        this.matching = matching;
+        this.numBands = numBands;
+        this.rowsPerBand = rowsPerBand;
+        this.threshold = threshold;
+    }
 
 
     /**
@@ -109,15 +139,19 @@ public class PageRank {
                 if (Math.floorMod(docID, 1000) == 0) {
                     System.out.println(workerID + ": is searching for matches in docID=" + docID);
                 }
+                if (!ireader.isLive(docID)) {
+                    continue;
+                }
 
-                CompressedRefsVector trefVec = new CompressedRefsVector(ireader.numDocs());
-                ReferencesVector trefNormVec;
-                Document doc = ireader.document(docID);
-
-                if (!Objects.isNull(doc.get("trefVec"))) {
+                // skip documents already searched in a previous (committed) run
+                String searchedVec = ireader.binaryDocValue(docID, "trefVec");
+                if (!Objects.isNull(searchedVec) && searchedVec.length() > 0) {
                     continue;
                 }
 
+                CompressedRefsVector trefVec = new CompressedRefsVector(ireader.numCordIDs());
+                Document doc = ireader.document(docID, Set.of("cordID", "references"));
+
                 if (doc.get("references").length() > 0) {
                     List<String> trefs = Arrays.stream(doc.get("references").split(ParsedArticle.REFERENCES_SEPARATOOR)).toList();
 
@@ -128,61 +162,19 @@ public class PageRank {
                         String trefAuthors = trefItems[1];
                         int trefCount = Integer.parseInt(trefItems[2]);
 
-                        // construct boolean query
-                        BooleanQuery.Builder booleanQueryBuilder = new BooleanQuery.Builder();
-
-                        // construct query parser for the title and authors of the tref
-                        QueryParser parserTitle = new QueryParser("title", new StandardAnalyzer());
-                        QueryParser parserAuthors = new QueryParser("authors", new StandardAnalyzer());
-                        Query queryTitle;
-                        Query queryAuthor;
-                        try {
-                            queryTitle = parserTitle.parse(trefTitle);
-                            queryAuthor = parserAuthors.parse(trefAuthors);
-                            booleanQueryBuilder.add(queryTitle, BooleanClause.Occur.SHOULD);
-                            booleanQueryBuilder.add(queryAuthor, BooleanClause.Occur.SHOULD);
-                        } catch (ParseException e) {
-                            e.printStackTrace();
-                            System.exit(-1);
-                        }
-
-                        // build the query and execute
-                        BooleanQuery booleanQuery = booleanQueryBuilder.build();
-                        TopDocs topDocs = isearcher.search(booleanQuery, 100);
-                        int j = 0;
-                        for (int i = 0; (i < Math.min(topDocs.scoreDocs.length, topDocs.totalHits.value)) && (j < m); i++) {
-                            Document matchDoc = ireader.document(topDocs.scoreDocs[i].doc);
-                            List<String> matchTitleWords = Arrays.stream(matchDoc.get("title").split(" ")).distinct().toList();
-
-                            // number of words from doc that are not in ref
-                            int mismatches = (int) matchTitleWords.stream().filter(x -> !trefTitle.contains(x)).count();
-                            if (mismatches > 0.1 * matchTitleWords.size()) {
-                                continue;
-                            }
-
-                            // number of words from ref that are not in doc
-                            mismatches = (int) Arrays.stream(trefTitle.split("\\s+"))
-                                    .filter(x -> !matchTitleWords.contains(x)).count();
-                            if (mismatches > 0.1 * trefTitle.split("\\s+").length) {
-                                continue;
-                            }
-
-                            // update vector entry and add cordID to the list accumulator
-                            int matchCordID = Integer.parseInt(matchDoc.get("cordID"));
+                        // search the reference (or reuse its previous resolution) and update vector entries
+                        for (int matchCordID : resolver.resolve(trefTitle, trefAuthors)) {
                             trefVec.add(matchCordID, trefCount);
-                            j++;
                         }
                     }
                 }
 
-                // normalize the binary and count vectors
-                trefNormVec = trefVec.toReferencesVector(true);
-
-                // add this 3 vectors in string format to the Apache Lucene Index
-                doc.add(new StoredField("trefVec", vector2string(trefVec.toCountVector(), VECTOR_ITEM_SEP)));
-                doc.add(new StoredField("trefCNVec", trefNormVec.count2string()));
-                doc.add(new StoredField("trefBNVec", trefNormVec.binary2string()));
-                iwriter.addDocument(doc);
+                // update the sparse references vector of the document in the Apache Lucene Index
+                iwriter.updateDocValues(new Term("cordID", doc.get("cordID")),
+                        new BinaryDocValuesField("trefVec", new BytesRef(trefVec.toString())));
+                if (Math.floorMod(searchedDocs.incrementAndGet(), commitEvery) == 0) {
+                    iwriter.commit();
+                }
             }
             long tend = System.currentTimeMillis();
             System.out.println("WorkerSearch " + workerID + ": " + (tend-tstart));
@@ -191,93 +183,94 @@ public class PageRank {
     }
 
 
-    private class WorkerInverse implements Runnable {
-        private int workerID;
-        private int start;
-        private int end;
-
-
-        private WorkerInverse(int start, int end, int workerID) {
-            this.workerID = workerID;
-            this.start = start;
-            this.end = end;
-        }
-
-        @Override
-        public void run() {
-            long tstart = System.currentTimeMillis();
-
-            Map<Integer, ReferencesVector> orefVecs = new HashMap<>();
-            IntStream.range(start, end).forEach(i -> {
-                orefVecs.put(i, new ReferencesVector(ireader.numDocs()));
-            });
-            Map<Integer, Integer> cord2doc = new HashMap<>();
-
-            for (int docID = 0; docID < ireader.numDocs(); docID++) {
-                Document doc = ireader.document(docID);
-                int ocordID = Integer.parseInt(doc.get("cordID"));
-                if (start <= ocordID || ocordID < end) {
-                    cord2doc.put(ocordID, docID);
+    /**
+     * Streams a sparse vector field of every document of the index (in parallel, each document is read once) and
+     * loads it as a CitationGraph whose rows are the cordIDs of the documents.
+     * @param fname Name of the doc values field (trefVec or orefVec).
+     * @param pool Pool where documents are read.
+     */
+    private CitationGraph readGraph(String fname, ForkJoinPool pool) {
+        CitationGraph.Builder builder = new CitationGraph.Builder(ireader.numCordIDs());
+        pool.submit(() -> ireader.liveDocIDs().parallel().forEach(
+                docID -> {
+                    String content = ireader.binaryDocValue(docID, fname);
+                    builder.setRow((int) ireader.numericDocValue(docID, "cordID"), Objects.isNull(content) ? "" : content);
                 }
-                ReferencesVector trefVec = new ReferencesVector(doc.get("trefBNVec"), doc.get("trefCNVec"));
-                IntStream.range(start, end).forEach(
-                        tcordID -> {
-                            orefVecs.get(tcordID).setEntries(tcordID, trefVec.getEntries(tcordID));
-                        }
-                );
-            }
-            orefVecs.entrySet().stream().forEach(
-                    entry -> {
-                        Document doc = ireader.document(cord2doc.get(entry.getKey()));
-                        doc.add(new StoredField("orefNCVec", orefVecs.get(entry.getKey()).count2string()));
-                        doc.add(new StoredField("orefNBVec", orefVecs.get(entry.getKey()).binary2string()));
-                        iwriter.addDocument(doc);
-                    }
-            );
-            long tend = System.currentTimeMillis();
-            System.out.println("WorkerInverse " + workerID + ": " + (tend-tstart));
-        }
+        )).join();
+        return builder.build();
     }
 
-
-    private ArrayRealVector updatePageRank(ArrayRealVector vectorPageRank, String fname) {
-        for (int iter = 0; iter < iterations; iter++) {
-            ArrayRealVector newVector = vectorPageRank.copy();
-            ArrayRealVector oldVector = vectorPageRank.copy();
-            IntStream.range(0, ireader.numDocs()).forEach(
-                    docID -> {
-                        Document doc = ireader.document(docID);
-                        int cordID = Integer.parseInt(doc.get("cordID"));
-                        newVector.setEntry(
-                                cordID, oldVector.dotProduct(string2vector(doc.get(fname), VECTOR_ITEM_SEP))
-                        );
-                    }
-            );
-            if (newVector.equals(oldVector)) {
-                break;
-            } else {
-                vectorPageRank = newVector.copy();
+    /**
+     * Opens the index to update its doc values in place, protecting its current commit point with a snapshot.
+     *
+     * If a previous stage did not finish (its snapshot was not released), that snapshot is kept as the protected
+     * commit instead of taking a new one: the stage resumes from the last commit of the index (e.g. the searching
+     * stage skips the documents already searched) and `PageRank rollback` can still restore the index to the commit
+     * before the unfinished stage (see IdxWriter.rollback()).
+     * @return Commit point of the index before the stage.
+     */
+    private IndexCommit openIndex() {
+        iwriter = new IdxWriter(INDEX_FOLDERNAME, true);
+        List<IndexCommit> staleCommits = iwriter.snapshots();
+        IndexCommit safeCommit;
+        if (staleCommits.isEmpty()) {
+            safeCommit = iwriter.snapshot();
+        } else {
+            safeCommit = staleCommits.get(0);
+            System.out.println("A previous stage did not finish: resuming from the last commit of " + INDEX_FOLDERNAME +
+                    " (run PageRank rollback to restore commit " + safeCommit.getGeneration() + " instead)");
+            for (IndexCommit staleCommit : staleCommits.subList(1, staleCommits.size())) {
+                iwriter.release(staleCommit);
             }
         }
-        return vectorPageRank;
+        ireader = new IdxReader(INDEX_FOLDERNAME);
+        System.out.println("Commit " + safeCommit.getGeneration() + " of " + INDEX_FOLDERNAME + " protected");
+        return safeCommit;
+    }
+
+    /**
+     * Commits the updates of a stage and releases the snapshot of the previous commit point.
+     */
+    private void closeIndex(IndexCommit safeCommit) {
+        iwriter.commit();
+        iwriter.release(safeCommit);
+        iwriter.close();
+        ireader.close();
     }
 
+
     private void computePageRank() {
-        Map<String, ArrayRealVector> vectors = new HashMap<>() {{
-            put("orefNBVec", binaryPageRank);
-            put("orefNCVec", countPageRank);
-        }};
-        Map<String, ArrayRealVector> result = vectors.entrySet().stream()
-                .collect(Collectors.toMap(Map.Entry::getKey, entry -> updatePageRank(entry.getValue(), entry.getKey())));
-        binaryPageRank = result.get("orefNBVec");
-        countPageRank = result.get("orefNCVec");
-
-        for (int docID = 0; docID < ireader.numDocs(); docID++) {
-            Document doc = ireader.document(docID);
-            int cordID = Integer.parseInt(doc.get("cordID"));
-            doc.add(new StoredField("binaryPageRank", binaryPageRank.getEntry(cordID)));
-            doc.add(new StoredField("countPageRank", countPageRank.getEntry(cordID)));
-            iwriter.addDocument(doc);
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        // rows of the graph are only the cordIDs of live documents: cordIDs of deleted documents (update) and the gaps
+        // between shards of different sizes are not nodes of the graph
+        int[] cordIDs = ireader.liveDocIDs().map(docID -> (int) ireader.numericDocValue(docID, "cordID")).sorted()
+                .toArray();
+        int[] rows = new int[ireader.numCordIDs()];
+        Arrays.fill(rows, -1);
+        for (int row = 0; row < cordIDs.length; row++) {
+            rows[cordIDs[row]] = row;
+        }
+        CitationGraph orefGraph = readGraph("orefVec", pool).compact(rows, cordIDs.length);
+        System.out.println("Inverse references graph loaded with " + orefGraph.numNodes() + " documents and " +
+                orefGraph.numEdges() + " references");
+
+        // binary and count PageRank are computed in the same sweep over the inverse references graph
+        PageRankSolver solver = new PageRankSolver(alpha, tolerance, iterations, blockSize, pool);
+        PageRankSolver.Result result = solver.solve(orefGraph);
+        pool.shutdown();
+        System.out.println("PageRank converged in " + result.iterations() + " iterations");
+        binaryPageRank = new double[rows.length];
+        countPageRank = new double[rows.length];
+        for (int row = 0; row < cordIDs.length; row++) {
+            binaryPageRank[cordIDs[row]] = result.binaryPageRank()[row];
+            countPageRank[cordIDs[row]] = result.countPageRank()[row];
+        }
+
+        for (int cordID : cordIDs) {
+            iwriter.updateDocValues(new Term("cordID", String.valueOf(cordID)),
+                    new DoubleDocValuesField("binaryPageRank", binaryPageRank[cordID]),
+                    new DoubleDocValuesField("countPageRank", countPageRank[cordID]));
         }
     }
 
@@ -287,15 +280,23 @@ public class PageRank {
         int numCores = Runtime.getRuntime().availableProcessors();
         ExecutorService executor = Executors.newFixedThreadPool(numCores);
 
-        duplicateFolder(INDEX_FOLDERNAME, SAVE_INDEX_FOLDERNAME);   // store a safe copy
-        renameFolder(INDEX_FOLDERNAME, TEMP_INDEX_FOLDERNAME);
-
-        iwriter = new IdxWriter(INDEX_FOLDERNAME);
-        ireader = new IdxReader(TEMP_INDEX_FOLDERNAME);
+        IndexCommit safeCommit = openIndex();
         isearcher = new IdxSearcher(ireader);
+        long tstart = System.currentTimeMillis();
+        TitleIndex titleIndex = new TitleIndex(ireader, m);
+        long tend = System.currentTimeMillis();
+        System.out.println("Exact-title index with " + titleIndex.size() + " titles built in " + (tend-tstart));
+        MinHashMatcher matcher = null;
+        if (matching == ReferenceResolver.Matching.MINHASH) {
+            tstart = System.currentTimeMillis();
+            matcher = new MinHashMatcher(ireader, numBands, rowsPerBand, threshold, m);
+            tend = System.currentTimeMillis();
+            System.out.println("MinHash index with " + matcher.dictionarySize() + " tokens built in " + (tend-tstart));
+        }
+        resolver = new ReferenceResolver(ireader, isearcher, m, titleIndex, matcher);
 
         System.out.println("Applying PageRank searching over " + ireader.numDocs() + " docs with " + numCores + " cores");
-        Integer[] workersDivision = coalesce(numCores, ireader.numDocs());
+        Integer[] workersDivision = coalesce(numCores, ireader.maxDoc());
 
         for (int workerID=0; workerID < numCores; workerID++) {
             int start = workersDivision[workerID];
@@ -313,78 +314,49 @@ public class PageRank {
             System.exit(-2);
         }
         System.out.println("All tasks have finished successfully");
+        System.out.println(resolver);
 
-        // close IndexWriter and IndexReader
-        iwriter.commit();
-        iwriter.close();
-        ireader.close();
-
-        // remove temporary folder
-        deleteFolder(TEMP_INDEX_FOLDERNAME);
-        deleteFolder(SAVE_INDEX_FOLDERNAME);
+        // commit the updates and close IndexWriter and IndexReader
+        closeIndex(safeCommit);
     }
 
     public void inverting() {
-        duplicateFolder(INDEX_FOLDERNAME, SAVE_INDEX_FOLDERNAME); // safe copy
-        renameFolder(INDEX_FOLDERNAME, TEMP_INDEX_FOLDERNAME);
-        iwriter = new IdxWriter(INDEX_FOLDERNAME);
-        ireader = new IdxReader(TEMP_INDEX_FOLDERNAME);
-        isearcher = new IdxSearcher(ireader);
-
-        System.out.println("Applying PageRank inverting process over " + ireader.numDocs() +
-                " docs with " + numCoresInvert + " in " + nbatchesInvert + " batches");
+        IndexCommit safeCommit = openIndex();
 
-        Integer[] batchesDivision = coalesce(nbatchesInvert, ireader.numDocs());
+        int numCores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Applying PageRank inverting process over " + ireader.numDocs() + " docs with " +
+                numCores + " cores");
 
-        for (int batch=0; batch < nbatchesInvert; batch++) {
-            System.out.println("Batch " + batch + " starting with docs " + batchesDivision[batch] + " - " + batchesDivision[batch+1]);
+        // single pass over the forward references and parallel counting sort transpose
+        ForkJoinPool pool = new ForkJoinPool(numCores);
+        long tstart = System.currentTimeMillis();
+        CitationGraph trefGraph = readGraph("trefVec", pool);
+        long tread = System.currentTimeMillis();
+        CitationGraph orefGraph = trefGraph.transpose(pool, numCores);
+        long tend = System.currentTimeMillis();
+        pool.shutdown();
+        System.out.println("References graph with " + trefGraph.numEdges() + " references read in " +
+                (tread-tstart) + " and inverted in " + (tend-tread));
 
-            ExecutorService executor = Executors.newFixedThreadPool(numCoresInvert);
-            Integer[] workersDivision = coalesce(numCoresInvert, (batchesDivision[batch + 1] - batchesDivision[batch]));
-            for (int workerID = 0; workerID < numCoresInvert; workerID++) {
-                int start = workersDivision[workerID] + batchesDivision[batch];
-                int end = workersDivision[workerID + 1] + batchesDivision[batch];
-                System.out.println("Worker " + workerID + " is inverting references from " + start + " to " + end);
-                WorkerInverse worker = new WorkerInverse(start, end, workerID);
-                executor.execute(worker);
-            }
-            executor.shutdown();
-            try {
-                executor.awaitTermination(4, TimeUnit.HOURS);
-            } catch (final InterruptedException e) {
-                e.printStackTrace();
-                System.exit(-2);
-            }
-            System.out.println("Batch " + batch + " has finished");
+        for (int cordID = 0; cordID < orefGraph.numNodes(); cordID++) {
+            iwriter.updateDocValues(new Term("cordID", String.valueOf(cordID)),
+                    new BinaryDocValuesField("orefVec", new BytesRef(orefGraph.row(cordID).toString())));
         }
 
-        iwriter.commit();
-        iwriter.close();
-        ireader.close();
-        deleteFolder(TEMP_INDEX_FOLDERNAME);
-        deleteFolder(SAVE_INDEX_FOLDERNAME);
+        closeIndex(safeCommit);
     }
 
 
     public void pagerank() {
-        duplicateFolder(INDEX_FOLDERNAME, SAVE_INDEX_FOLDERNAME); // safe copy
-        renameFolder(INDEX_FOLDERNAME, TEMP_INDEX_FOLDERNAME);
-        iwriter = new IdxWriter(INDEX_FOLDERNAME);
-        ireader = new IdxReader(TEMP_INDEX_FOLDERNAME);
+        IndexCommit safeCommit = openIndex();
         isearcher = null;
-        binaryPageRank = new ArrayRealVector(ireader.numDocs(), (double) 1 / ireader.numDocs());
-        countPageRank = new ArrayRealVector(ireader.numDocs(), (double) 1 / ireader.numDocs());
 
         long tstart = System.currentTimeMillis();
         computePageRank();
         long tend = System.currentTimeMillis();
         System.out.println("PageRank computing time: " + (tend-tstart));
 
-        iwriter.commit();
-        iwriter.close();
-        ireader.close();
-        deleteFolder(TEMP_INDEX_FOLDERNAME);
-        deleteFolder(SAVE_INDEX_FOLDERNAME);
+        closeIndex(safeCommit);
     }
 
     public void launch() {
@@ -397,7 +369,7 @@ public class PageRank {
 //
         /**
          * -------- Second stage INVERTING --------
-         * Invert the references vector stored in REFS_INDEX_FOLDERNAME.
+         * Invert the references vectors stored in the trefVec doc values.
          */
 //        inverting();
 
@@ -410,8 +382,27 @@ public class PageRank {
     }
 
 
+    /**
+     * Usage: PageRank [lucene|minhash] [numBands] [rowsPerBand] [threshold]
+     * The matching engine of the references (lucene by default) and the MinHash settings (see MinHashMatcher) are
+     * used by the searching stage.
+     *
+     * Usage: PageRank rollback
+     * Restores the index to the commit before a stage that did not finish (see openIndex()).
+     */
     public static void main(String[] args) {
-        PageRank algorithm = new PageRank();
+        if (args.length > 0 && args[0].equals("rollback")) {
+            long generation = IdxWriter.rollback(INDEX_FOLDERNAME);
+            System.out.println(generation == -1 ? "No unfinished stage in " + INDEX_FOLDERNAME :
+                    "Commit " + generation + " of " + INDEX_FOLDERNAME + " restored");
+            return;
+        }
+        ReferenceResolver.Matching matching = args.length > 0 ?
+                ReferenceResolver.Matching.valueOf(args[0].toUpperCase(Locale.ROOT)) : ReferenceResolver.Matching.LUCENE;
+        int numBands = args.length > 1 ? Integer.parseInt(args[1]) : MinHashMatcher.DEFAULT_NUM_BANDS;
+        int rowsPerBand = args.length > 2 ? Integer.parseInt(args[2]) : MinHashMatcher.DEFAULT_ROWS_PER_BAND;
+        double threshold = args.length > 3 ? Double.parseDouble(args[3]) : MinHashMatcher.DEFAULT_THRESHOLD;
+        PageRank algorithm = new PageRank(matching, numBands, rowsPerBand, threshold);
         algorithm.launch();
     }
 }
@@ -0,0 +1,217 @@
+package cords;
+
+import schemas.CitationGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel power iteration of PageRank over an in-memory sparse inverse references graph.
+ *
+ * The binary and count variants are computed in a single fused sweep: each row block of the inverse graph is visited
+ * once per iteration and updates both vectors. Blocks are split with a ForkJoinPool, documents without references
+ * (dangling) distribute their mass uniformly and the iteration stops when the L1 residual of both vectors is lower
+ * than the tolerance (or maxIterations is reached).
+ *
+ * Global variables:
+ *      alpha         [float]         : Random jump probability.
+ *      tolerance     [double]        : L1 residual ||new - old||_1 under which a vector is considered converged.
+ *      maxIterations [int]           : Maximum number of power iterations.
+ *      blockSize     [int]           : Number of rows under which a block is not split anymore.
+ *      pool          [ForkJoinPool]  : Pool where row blocks are executed.
+ */
+public class PageRankSolver {
+    private final float alpha;
+    private final double tolerance;
+    private final int maxIterations;
+    private final int blockSize;
+    private final ForkJoinPool pool;
+
+    /* Sweep state (valid while solve() is running) */
+    private CitationGraph orefGraph;
+    private double[] binaryScale;
+    private double[] countScale;
+    private boolean[] dangling;
+    private double[] oldBinary;
+    private double[] oldCount;
+    private double[] newBinary;
+    private double[] newCount;
+    private double baseBinary;
+    private double baseCount;
+
+    /**
+     * PageRank vectors and convergence information returned by solve().
+     */
+    public static class Result {
+        private final double[] binaryPageRank;
+        private final double[] countPageRank;
+        private final List<Double> binaryResiduals;
+        private final List<Double> countResiduals;
+        private final List<Long> iterationTimes;
+
+        private Result(double[] binaryPageRank, double[] countPageRank, List<Double> binaryResiduals,
+                       List<Double> countResiduals, List<Long> iterationTimes) {
+            this.binaryPageRank = binaryPageRank;
+            this.countPageRank = countPageRank;
+            this.binaryResiduals = binaryResiduals;
+            this.countResiduals = countResiduals;
+            this.iterationTimes = iterationTimes;
+        }
+
+        public double[] binaryPageRank() {
+            return binaryPageRank;
+        }
+
+        public double[] countPageRank() {
+            return countPageRank;
+        }
+
+        public int iterations() {
+            return iterationTimes.size();
+        }
+
+        public List<Double> binaryResiduals() {
+            return binaryResiduals;
+        }
+
+        public List<Double> countResiduals() {
+            return countResiduals;
+        }
+
+        /** Wall time (milliseconds) of each iteration. */
+        public List<Long> iterationTimes() {
+            return iterationTimes;
+        }
+    }
+
+    /**
+     * Computes a block of rows of the new vectors and returns its partial sums:
+     * {binary residual, count residual, binary dangling mass, count dangling mass}.
+     */
+    private class RowBlockSweep extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+        private final int start;
+        private final int end;
+
+        private RowBlockSweep(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (end - start > blockSize) {
+                int middle = (start + end) >>> 1;
+                RowBlockSweep left = new RowBlockSweep(start, middle);
+                left.fork();
+                double[] right = new RowBlockSweep(middle, end).compute();
+                double[] partial = left.join();
+                for (int i = 0; i < partial.length; i++) {
+                    partial[i] += right[i];
+                }
+                return partial;
+            }
+
+            double[] partial = new double[4];
+            for (int i = start; i < end; i++) {
+                double valueBinary = baseBinary;
+                double valueCount = baseCount;
+                for (int edge = orefGraph.start(i); edge < orefGraph.end(i); edge++) {
+                    int ocordID = orefGraph.target(edge);
+                    valueBinary += oldBinary[ocordID] * binaryScale[ocordID];
+                    valueCount += oldCount[ocordID] * countScale[ocordID] * orefGraph.weight(edge);
+                }
+                newBinary[i] = valueBinary;
+                newCount[i] = valueCount;
+                partial[0] += Math.abs(valueBinary - oldBinary[i]);
+                partial[1] += Math.abs(valueCount - oldCount[i]);
+                if (dangling[i]) {
+                    partial[2] += valueBinary;
+                    partial[3] += valueCount;
+                }
+            }
+            return partial;
+        }
+    }
+
+    public PageRankSolver(float alpha, double tolerance, int maxIterations, int blockSize, ForkJoinPool pool) {
+        this.alpha = alpha;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        this.blockSize = blockSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Runs the power iteration starting from the uniform vector.
+     * @param orefGraph Inverse references graph: row i contains the documents that reference document i.
+     * @return Binary and count PageRank vectors indexed by cordID.
+     */
+    public synchronized Result solve(CitationGraph orefGraph) {
+        int n = orefGraph.numNodes();
+        this.orefGraph = orefGraph;
+
+        // weight of each reference made by a document: (1 - alpha) / out
+        double[][] columnWeights = orefGraph.columnWeights();
+        binaryScale = new double[n];
+        countScale = new double[n];
+        dangling = new boolean[n];
+        for (int j = 0; j < n; j++) {
+            dangling[j] = columnWeights[1][j] == 0;
+            if (!dangling[j]) {
+                binaryScale[j] = (1 - alpha) / columnWeights[1][j];
+                countScale[j] = (1 - alpha) / columnWeights[0][j];
+            }
+        }
+
+        oldBinary = new double[n];
+        oldCount = new double[n];
+        Arrays.fill(oldBinary, 1.0 / n);
+        Arrays.fill(oldCount, 1.0 / n);
+        double danglingBinary = 0;
+        for (int j = 0; j < n; j++) {
+            if (dangling[j]) {
+                danglingBinary += 1.0 / n;
+            }
+        }
+        double danglingCount = danglingBinary;
+
+        List<Double> binaryResiduals = new ArrayList<>();
+        List<Double> countResiduals = new ArrayList<>();
+        List<Long> iterationTimes = new ArrayList<>();
+
+        for (int iter = 0; iter < maxIterations; iter++) {
+            long tstart = System.currentTimeMillis();
+            // the iteration preserves the total mass (1), so linked mass = 1 - dangling mass
+            baseBinary = (alpha * (1 - danglingBinary) + danglingBinary) / n;
+            baseCount = (alpha * (1 - danglingCount) + danglingCount) / n;
+            newBinary = new double[n];
+            newCount = new double[n];
+
+            double[] sums = pool.invoke(new RowBlockSweep(0, n));
+
+            danglingBinary = sums[2];
+            danglingCount = sums[3];
+            oldBinary = newBinary;
+            oldCount = newCount;
+            long tend = System.currentTimeMillis();
+
+            binaryResiduals.add(sums[0]);
+            countResiduals.add(sums[1]);
+            iterationTimes.add(tend - tstart);
+            System.out.println("PageRank iteration " + iter + ": binary residual=" + sums[0] +
+                    ", count residual=" + sums[1] + " (" + (tend - tstart) + " ms)");
+            if (sums[0] < tolerance && sums[1] < tolerance) {
+                break;
+            }
+        }
+
+        Result result = new Result(oldBinary, oldCount, binaryResiduals, countResiduals, iterationTimes);
+        this.orefGraph = null;
+        oldBinary = oldCount = newBinary = newCount = null;
+        return result;
+    }
+}
@@ -0,0 +1,255 @@
+package cords;
+
+import lucene.IdxReader;
+import lucene.IdxSearcher;
+import org.apache.lucene.search.similarities.*;
+import schemas.Qrels;
+import schemas.TopDocument;
+import schemas.TopicQuery;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static cords.CollectionReader.readRelevanceJudgements;
+import static cords.CollectionReader.readTopics;
+
+/**
+ * Evaluates many configurations of the retrieval models in a single process: the index is opened once, topics and
+ * relevance judgements are read once, and configurations are run concurrently in a work-stealing pool. Each
+ * configuration only creates its own searcher (to set its similarity) and models over the shared reader.
+ *
+ * The search space is read from a file with one parameter per line (name=value1,value2,...; lines starting with # are
+ * ignored). Parameters that are not given keep their default value (see QueryComputation.Parameters.DEFAULT):
+ *      type            : Retrieval model (see QueryComputation.query()), 1 by default.
+ *      title, abstract, body : Weights of the fields.
+ *      similarity      : Similarity of the searcher: bm25[:k1:b], lmjm:lambda, lmd:mu or classic (bm25 by default).
+ *      alpha, beta, gamma, iterations : Rocchio parameters of the VectorModel.
+ *      numTerms        : Expansion terms of the ProbabilityModel.
+ *      countPageRank   : true/false, PageRank of the PageRankModel.
+ * Configurations are all the combinations of the values (grid search) or numSamples random combinations.
+ *
+ * The metrics of each configuration are appended to the results file (tab-separated) as soon as it finishes.
+ */
+public class ParameterSweep {
+    private static final String[] PARAMETERS = {"type", "title", "abstract", "body", "similarity", "alpha", "beta",
+            "gamma", "iterations", "numTerms", "countPageRank"};
+
+    private final IdxReader ireader;
+    private final List<TopicQuery> topics;
+    private final Qrels qrels;
+    private final int n;
+    private final int k;
+
+    public ParameterSweep(IdxReader ireader, List<TopicQuery> topics, Qrels qrels, int n, int k) {
+        this.ireader = ireader;
+        this.topics = topics;
+        this.qrels = qrels;
+        this.n = n;
+        this.k = k;
+    }
+
+    /**
+     * Reads the search space file.
+     * @return Values of each parameter (in the order of PARAMETERS).
+     */
+    public static Map<String, List<String>> readSpace(Path path) throws IOException {
+        Map<String, List<String>> space = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] items = line.split("=", 2);
+            if (!Arrays.asList(PARAMETERS).contains(items[0].strip())) {
+                throw new IllegalArgumentException("Unknown parameter " + items[0] + " in " + path);
+            }
+            space.put(items[0].strip(), Arrays.stream(items[1].split(",")).map(String::strip).toList());
+        }
+        return space;
+    }
+
+    /**
+     * All the combinations of the values of the search space.
+     */
+    public static List<Map<String, String>> grid(Map<String, List<String>> space) {
+        List<Map<String, String>> configs = new ArrayList<>();
+        configs.add(new LinkedHashMap<>());
+        for (Map.Entry<String, List<String>> parameter : space.entrySet()) {
+            List<Map<String, String>> expanded = new ArrayList<>();
+            for (Map<String, String> config : configs) {
+                for (String value : parameter.getValue()) {
+                    Map<String, String> newConfig = new LinkedHashMap<>(config);
+                    newConfig.put(parameter.getKey(), value);
+                    expanded.add(newConfig);
+                }
+            }
+            configs = expanded;
+        }
+        return configs;
+    }
+
+    /**
+     * Random combinations of the values of the search space (duplicates are removed).
+     */
+    public static List<Map<String, String>> sample(Map<String, List<String>> space, int numSamples, long seed) {
+        Random random = new Random(seed);
+        Set<Map<String, String>> configs = new LinkedHashSet<>();
+        for (int i = 0; i < numSamples; i++) {
+            Map<String, String> config = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> parameter : space.entrySet()) {
+                config.put(parameter.getKey(), parameter.getValue().get(random.nextInt(parameter.getValue().size())));
+            }
+            configs.add(config);
+        }
+        return new ArrayList<>(configs);
+    }
+
+    /**
+     * Runs the configurations concurrently and appends the metrics of each one to the results file when it finishes.
+     * @param configs Value of the parameters of each configuration.
+     * @param resultsPath Tab-separated results file (one line per configuration).
+     */
+    public void run(List<Map<String, String>> configs, Path resultsPath) {
+        ExecutorService pool = Executors.newWorkStealingPool();
+        try (BufferedWriter writer = Files.newBufferedWriter(resultsPath, StandardCharsets.UTF_8)) {
+            writer.write(String.join("\t", PARAMETERS) + "\tnum_q\tmap\tRprec\tP_" + k + "\tndcg_cut_" + k +
+                    "\trecall\tseconds\n");
+            writer.flush();
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (Map<String, String> config : configs) {
+                futures.add(pool.submit(() -> {
+                    String line = evaluate(config);
+                    synchronized (writer) {
+                        writer.write(line);
+                        writer.flush();
+                    }
+                    return null;
+                }));
+            }
+            int done = 0;
+            for (Future<?> future : futures) {
+                future.get();
+                done++;
+                if (done % 10 == 0 || done == futures.size()) {
+                    System.out.println(done + " of " + futures.size() + " configurations evaluated");
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while writing the sweep results in " + resultsPath);
+            e.printStackTrace();
+            System.exit(-1);
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Exception while evaluating the sweep configurations");
+            e.printStackTrace();
+            System.exit(-1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Queries the topics with a configuration and returns its line of the results file.
+     */
+    private String evaluate(Map<String, String> config) {
+        QueryComputation.Parameters defaults = QueryComputation.Parameters.DEFAULT;
+        int typeQuery = Integer.parseInt(config.getOrDefault("type", "1"));
+        QueryComputation.Parameters parameters = new QueryComputation.Parameters(
+                new float[]{
+                        Float.parseFloat(config.getOrDefault("title", Float.toString(defaults.weights()[0]))),
+                        Float.parseFloat(config.getOrDefault("abstract", Float.toString(defaults.weights()[1]))),
+                        Float.parseFloat(config.getOrDefault("body", Float.toString(defaults.weights()[2])))
+                },
+                Double.parseDouble(config.getOrDefault("alpha", Double.toString(defaults.alpha()))),
+                Double.parseDouble(config.getOrDefault("beta", Double.toString(defaults.beta()))),
+                Double.parseDouble(config.getOrDefault("gamma", Double.toString(defaults.gamma()))),
+                Integer.parseInt(config.getOrDefault("iterations", Integer.toString(defaults.iterations()))),
+                Integer.parseInt(config.getOrDefault("numTerms", Integer.toString(defaults.numTerms()))),
+                Boolean.parseBoolean(config.getOrDefault("countPageRank", Boolean.toString(defaults.countPageRank())))
+        );
+        IdxSearcher isearcher = new IdxSearcher(ireader, similarity(config.getOrDefault("similarity", "bm25")));
+
+        long start = System.currentTimeMillis();
+        Map<Integer, List<TopDocument>> topicsTopDocs =
+                new QueryComputation(ireader, isearcher, topics, n, parameters).query(typeQuery);
+        Map<Integer, TrecEvaluation.TopicMetrics> topicsMetrics =
+                TrecEvaluation.evaluate(TrecEvaluation.rankings(topicsTopDocs), qrels, k);
+        TrecEvaluation.TopicMetrics mean = TrecEvaluation.mean(topicsMetrics);
+        long end = System.currentTimeMillis();
+
+        StringBuilder line = new StringBuilder();
+        for (String parameter : PARAMETERS) {
+            line.append(config.getOrDefault(parameter, "")).append('\t');
+        }
+        line.append(topicsMetrics.size()).append('\t')
+                .append(mean.ap()).append('\t')
+                .append(mean.rPrec()).append('\t')
+                .append(mean.precision()).append('\t')
+                .append(mean.ndcg()).append('\t')
+                .append(mean.recall()).append('\t')
+                .append((end - start) * 0.001).append('\n');
+        return line.toString();
+    }
+
+    /**
+     * Similarity of a specification: bm25[:k1:b], lmjm:lambda, lmd:mu or classic.
+     */
+    public static Similarity similarity(String specification) {
+        String[] items = specification.split(":");
+        switch (items[0]) {
+            case "bm25":
+                return items.length == 3 ?
+                        new BM25Similarity(Float.parseFloat(items[1]), Float.parseFloat(items[2])) :
+                        new BM25Similarity();
+            case "lmjm":
+                return new LMJelinekMercerSimilarity(Float.parseFloat(items[1]));
+            case "lmd":
+                return new LMDirichletSimilarity(Float.parseFloat(items[1]));
+            case "classic":
+                return new ClassicSimilarity();
+            default:
+                throw new IllegalArgumentException("Unknown similarity " + specification);
+        }
+    }
+
+
+    /**
+     * Usage: ParameterSweep spaceFile resultsFile n k [numSamples]
+     * With numSamples, numSamples random configurations of the space are evaluated instead of the whole grid.
+     */
+    public static void main(String[] args) {
+        Path spacePath = Paths.get(args[0]);
+        Path resultsPath = Paths.get(args[1]);
+        int n = Integer.parseInt(args[2]);
+        int k = Integer.parseInt(args[3]);
+        int numSamples = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        Map<String, List<String>> space = null;
+        try {
+            space = readSpace(spacePath);
+        } catch (IOException e) {
+            System.out.println("IOException while reading the search space in " + spacePath);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        List<Map<String, String>> configs = numSamples > 0 ? sample(space, numSamples, 42) : grid(space);
+        System.out.println("Evaluating " + configs.size() + " configurations");
+
+        IdxReader ireader = new IdxReader(PoolIndexing.INDEX_FOLDERNAME);
+        ParameterSweep sweep = new ParameterSweep(ireader, readTopics(), readRelevanceJudgements(), n, k);
+        long start = System.currentTimeMillis();
+        sweep.run(configs, resultsPath);
+        long end = System.currentTimeMillis();
+        System.out.println("Sweep time (seconds): " + (end-start)*0.001);
+        ireader.close();
+    }
+}
@@ -1,5 +1,6 @@
 package cords;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import lucene.IdxReader;
 import lucene.IdxWriter;
 import formats.Metadata;
@@ -7,14 +8,17 @@ import org.apache.lucene.document.*;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.similarities.LMJelinekMercerSimilarity;
 import org.apache.lucene.search.similarities.Similarity;
-import schemas.Embedding;
+import org.apache.lucene.util.BytesRef;
+import schemas.EmbeddingStore;
 import schemas.ParsedArticle;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import static util.AuxiliarFunctions.*;
 import static cords.CollectionReader.*;
@@ -23,198 +27,560 @@ import static cords.CollectionReader.*;
  * Implementation of the parallel indexing process of the JSON files content once the metadata.csv and cord-embeddings
  * have been parsed.
  *
+ * Indexing is a pipeline of stages connected by bounded queues: metadata.csv rows are streamed by a reader, parsed by
+ * a pool of parser workers that build the Lucene documents, and added to the index by a pool of writer workers.
+ *
  * Global variables:
  *      POOL_COLLECTION_PATH: Path where JSON files are stored.
  *      INDEX_FOLDERNAME: Folder name index will be stored with.
+ *      nextCordID: Number of cordIDs (surrogate keys) assigned by this process. cordIDs are only assigned to the
+ *      documents that are added to the index, so they are dense (0..numDocs-1) after a full indexing without shards.
+ *      numShards, shard: The collection can be split in numShards shards (by the hash of the cordUID) that are indexed
+ *      independently (see launchShard()) and merged (see merge()). The i-th document of a shard has cordID
+ *      i*numShards + shard, so cordIDs are unique across shards but have gaps when shards have different sizes (the
+ *      merged index stores the upper bound of its cordIDs, see IdxReader.numCordIDs()). PageRank only uses the cordIDs
+ *      of live documents as nodes of the references graph.
  *      similarity: Similarity object to write the index.
+ *
+ * An existing index can also be updated with a new release of the collection (see update()): only new and changed
+ * articles (detected by a hash of their metadata row, JSON files and embedding) are parsed and indexed, and articles
+ * that are not in the new metadata.csv are deleted. Updated articles keep their cordID and the cordIDs of deleted
+ * articles are not reused, so PageRank only uses the cordIDs of live documents as nodes of the references graph.
+ * If the new JSON files of an indexed article cannot be parsed, its indexed version is kept.
  */
 public class PoolIndexing {
     private Path POOL_COLLECTION_PATH = COLLECTION_PATH;
-    private String TEMP_PREFFIX = "temp";
     public static String INDEX_FOLDERNAME = "Index-LMJelinekMercer-short";
-    private String TEMP_INDEX_FOLDERNAME = TEMP_PREFFIX + INDEX_FOLDERNAME;
     public static IdxWriter iwriter;
     public static Similarity similarity = new LMJelinekMercerSimilarity(0.1F);
-    public static Map<String, Embedding> docEmbeddings;
+    public static EmbeddingStore docEmbeddings;
     private final int numCores =  Runtime.getRuntime().availableProcessors();
     private final int bodyLines = 3;
+    private final AtomicInteger nextCordID = new AtomicInteger();
+    private String indexFoldername = INDEX_FOLDERNAME;
+    private int numShards = 1;
+    private int shard = 0;
+
+    /* Global variables (pipeline)
+    numParsers       [int]                       : Number of workers that parse JSON articles.
+    numWriters       [int]                       : Number of workers that add documents to the index.
+    queueCapacity    [int]                       : Capacity of the queues between stages.
+    rowsQueue        [BlockingQueue<Metadata>]   : Metadata rows waiting to be parsed.
+    docsQueue        [BlockingQueue<Document>]   : Documents waiting to be added to the index.
+    END_OF_ROWS, END_OF_DOCS                     : End marks of each queue.
+     */
+    private final int numParsers = numCores;
+    private final int numWriters = Math.max(1, numCores / 2);
+    private final int queueCapacity = 256;
+    private BlockingQueue<Metadata> rowsQueue;
+    private BlockingQueue<Document> docsQueue;
+    private AtomicInteger runningParsers;
+    private AtomicInteger runningWriters;
+    private Stage readStage;
+    private Stage parseStage;
+    private Stage writeStage;
+    private static final Metadata END_OF_ROWS = new Metadata(null, null, null, null, null, null, null);
+    private static final Document END_OF_DOCS = new Document();
+
+    /* Global variables (updates)
+    updating            [boolean]                        : If true, documents replace the ones with the same cordUID.
+    indexedDocuments    [Map<String, IndexedDocument>]   : cordID and content hash of each cordUID of the index.
+    seenCordUIDs        [Set<String>]                    : cordUIDs of the new metadata.csv that are kept in the index.
+     */
+    private boolean updating;
+    private Map<String, IndexedDocument> indexedDocuments = new HashMap<>();
+    private Set<String> seenCordUIDs = ConcurrentHashMap.newKeySet();
+    private final LongAdder unchangedDocs = new LongAdder();
+    private final LongAdder updatedDocs = new LongAdder();
+    private final LongAdder addedDocs = new LongAdder();
+
+    private record IndexedDocument(int cordID, long contentHash) {}
+
+
+    /**
+     * Progress of a stage of the indexing pipeline: number of processed items and time since the stage started until
+     * its last worker finished.
+     */
+    private static class Stage {
+        private final String name;
+        private final LongAdder items = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final long start = System.currentTimeMillis();
+        private volatile long end;
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        private void finish() {
+            end = System.currentTimeMillis();
+        }
 
+        public String toString() {
+            long elapsed = Math.max(1, end - start);
+            return name + ": " + items.sum() + " items in " + elapsed*0.001 + " s (" + 1000 * items.sum() / elapsed +
+                    " items/s)" + (failures.sum() > 0 ? ", " + failures.sum() + " failed" : "");
+        }
+    }
 
-    private class WorkerIndexing implements Runnable {
-        private List<Metadata> metadataSlice;   // worker slice of metadata rows
+
+    /**
+     * First stage of the pipeline: streams the rows of metadata.csv to the rows queue and, when the file has been
+     * read, sends one end mark per parser worker.
+     */
+    private class RowsReader implements Callable<Long> {
+        @Override
+        public Long call() throws InterruptedException, IOException {
+            try (MappingIterator<Metadata> metadata = streamMetadata()) {
+                while (metadata.hasNext()) {
+                    Metadata rowMetadata = metadata.next();
+                    readStage.items.increment();
+                    if (numShards == 1 || Math.floorMod(rowMetadata.cordUID().hashCode(), numShards) == shard) {
+                        rowsQueue.put(rowMetadata);
+                    }
+                }
+            }
+            readStage.finish();
+            System.out.println("A total of " + readStage.items.sum() + " articles have been read from metadata");
+            for (int i = 0; i < numParsers; i++) {
+                rowsQueue.put(END_OF_ROWS);
+            }
+            return readStage.items.sum();
+        }
+    }
+
+
+    private class WorkerIndexing implements Callable<Long> {
         private int numWorker;
 
         /**
-         * Subclass of a Thread Process of the indexing Pool.
-         * @param metadata List of Metadata objects representing each row of the metadata.csv file.
+         * Parser worker of the indexing pipeline: takes metadata rows from the rows queue (so work is distributed
+         * dynamically), parses their JSON files and sends the resulting Lucene documents to the documents queue.
          * @param numWorker Worker ID.
          */
-        private WorkerIndexing(List<Metadata> metadata, int numWorker) {
-            this.metadataSlice = metadata;
+        private WorkerIndexing(int numWorker) {
             this.numWorker = numWorker;
         }
 
-        /** 
-        * When the thread starts its tasks, it is in charge of indexing the metadata fields:
-         *      (cordUID, title, abstract, doc embedding, authors, body, references)
+        /**
+         * When the thread starts its tasks, it is in charge of indexing the metadata fields:
+         *      (cordUID, cordID, title, abstract, doc embedding, authors, body, references)
+         * The last parser that finishes sends one end mark per writer worker.
          */
         @Override
-        public void run() {
-            for (Metadata rowMetadata : metadataSlice) {
-                ParsedArticle parsedArticle = parseRowMetadata(rowMetadata, bodyLines);
+        public Long call() throws InterruptedException {
+            long parsed = 0;
+            for (Metadata rowMetadata = rowsQueue.take(); rowMetadata != END_OF_ROWS; rowMetadata = rowsQueue.take()) {
+                long contentHash = contentHash(rowMetadata);
+                IndexedDocument indexed = null;
+                if (updating) {
+                    // each cordUID is indexed once and unchanged articles are not parsed again
+                    if (!seenCordUIDs.add(rowMetadata.cordUID())) {
+                        continue;
+                    }
+                    indexed = indexedDocuments.get(rowMetadata.cordUID());
+                    if (!Objects.isNull(indexed) && indexed.contentHash() == contentHash) {
+                        unchangedDocs.increment();
+                        continue;
+                    }
+                }
+
+                ParsedArticle parsedArticle;
+                try {
+                    parsedArticle = parseRowMetadata(rowMetadata, bodyLines);
+                } catch (RuntimeException e) {
+                    System.out.println("Error while parsing article " + rowMetadata.cordUID());
+                    e.printStackTrace();
+                    parseStage.failures.increment();
+                    if (!Objects.isNull(indexed)) {
+                        // the indexed version of the article is kept (it is still in seenCordUIDs)
+                        System.out.println("The indexed version of article " + rowMetadata.cordUID() + " is kept");
+                        continue;
+                    }
+                    parsedArticle = null;
+                }
                 if (Objects.isNull(parsedArticle)) {
+                    seenCordUIDs.remove(rowMetadata.cordUID());     // no JSON files: if it was indexed, it is deleted
                     continue;
                 }
 
-                Document doc = new Document();
-
-                // Add rowMetadata UID as stored field
-                doc.add(new StoredField("cordUID", rowMetadata.cordUID()));
-
-                // title: stored, tokenized, term-vectorized
-                FieldType titleFieldType = new FieldType();
-                titleFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
-                titleFieldType.setStored(true);
-                titleFieldType.setTokenized(true);
-                titleFieldType.setStoreTermVectors(true);
-                doc.add(new Field("title", rowMetadata.title(), titleFieldType));
-
-                // abstract: stored, tokenized, term-vectorized
-                FieldType abstractFieldType = new FieldType();
-                abstractFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
-                abstractFieldType.setStored(true);
-                abstractFieldType.setTokenized(true);
-                abstractFieldType.setStoreTermVectors(true);
-                doc.add(new Field("abstract", rowMetadata.abstractt(), abstractFieldType));
-
-                // document embedding
-                if (docEmbeddings.keySet().contains(rowMetadata.cordUID())) {
-                    Embedding docEmbedding = docEmbeddings.get(rowMetadata.cordUID());
-                    doc.add(new KnnVectorField("knn-embedding", docEmbedding.getFloat()));
-                    doc.add(new StoredField("embedding", docEmbedding.toString()));
+                // changed articles keep their cordID
+                int cordID;
+                if (Objects.isNull(indexed)) {
+                    cordID = nextCordID.getAndIncrement() * numShards + shard;
+                    addedDocs.increment();
+                } else {
+                    cordID = indexed.cordID();
+                    updatedDocs.increment();
+                }
+                docsQueue.put(buildDocument(rowMetadata, parsedArticle, cordID, contentHash,
+                        docEmbeddings.get(rowMetadata.cordUID())));
+                parseStage.items.increment();
+                parsed++;
+            }
+            System.out.println("Worker " + numWorker + " : Finished (" + parsed + " articles parsed)");
+            if (runningParsers.decrementAndGet() == 0) {
+                parseStage.finish();
+                for (int i = 0; i < numWriters; i++) {
+                    docsQueue.put(END_OF_DOCS);
                 }
+            }
+            return parsed;
+        }
+    }
+
+
+    /**
+     * Builds the Lucene document of an article.
+     * @param rowMetadata Metadata row of the article.
+     * @param parsedArticle Parsed JSON files of the article.
+     * @param cordID Surrogate key of the document.
+     * @param contentHash Hash of the content of the article (see contentHash()).
+     * @param docEmbedding Embedding of the article (null if it has no embedding).
+     */
+    public static Document buildDocument(Metadata rowMetadata, ParsedArticle parsedArticle, int cordID,
+                                         long contentHash, float[] docEmbedding) {
+        Document doc = new Document();
+
+        // Add rowMetadata UID as stored field and indexed (to update the document)
+        doc.add(new StoredField("cordUID", rowMetadata.cordUID()));
+        doc.add(new StringField("cordUID", rowMetadata.cordUID(), Field.Store.NO));
+        doc.add(new StoredField("contentHash", contentHash));
+
+        // surrogate key: stored, indexed (to update the document) and as doc values
+        doc.add(new StoredField("cordID", cordID));
+        doc.add(new StringField("cordID", String.valueOf(cordID), Field.Store.NO));
+        doc.add(new NumericDocValuesField("cordID", cordID));
+
+        // title: stored, tokenized, term-vectorized
+        FieldType titleFieldType = new FieldType();
+        titleFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        titleFieldType.setStored(true);
+        titleFieldType.setTokenized(true);
+        titleFieldType.setStoreTermVectors(true);
+        doc.add(new Field("title", rowMetadata.title(), titleFieldType));
+
+        // abstract: stored, tokenized, term-vectorized
+        FieldType abstractFieldType = new FieldType();
+        abstractFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        abstractFieldType.setStored(true);
+        abstractFieldType.setTokenized(true);
+        abstractFieldType.setStoreTermVectors(true);
+        doc.add(new Field("abstract", rowMetadata.abstractt(), abstractFieldType));
+
+        // document embedding
+        if (!Objects.isNull(docEmbedding)) {
+            doc.add(new KnnVectorField(IdxReader.EMBEDDING_FIELD, docEmbedding));
+        }
+
+        // body: tokenized, term-vectorized, not stored
+        FieldType bodyFieldType = new FieldType();
+        bodyFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        bodyFieldType.setStored(false);
+        bodyFieldType.setTokenized(true);
+        bodyFieldType.setStoreTermVectors(true);
+        doc.add(new Field("body", parsedArticle.body(), bodyFieldType));
+
+        // authors: stored, tokenized, not term-vectorized
+        FieldType authorsFieldType = new FieldType();
+        authorsFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+        authorsFieldType.setStored(true);
+        authorsFieldType.setTokenized(true);
+        authorsFieldType.setStoreTermVectors(false);
+        doc.add(new Field("authors", parsedArticle.authors(), authorsFieldType));
+
+        // references: stored
+        FieldType refFieldType = new FieldType();
+        refFieldType.setStored(true);
+        refFieldType.setTokenized(false);
+        refFieldType.setIndexOptions(IndexOptions.NONE);
+        doc.add(new Field("references", parsedArticle.textReferences(), refFieldType));
+
+        // PageRank features: created empty and updated in place by PageRank
+        doc.add(new BinaryDocValuesField("trefVec", new BytesRef()));
+        doc.add(new BinaryDocValuesField("orefVec", new BytesRef()));
+        doc.add(new DoubleDocValuesField("binaryPageRank", 0));
+        doc.add(new DoubleDocValuesField("countPageRank", 0));
+
+        return doc;
+    }
+
+
+    /**
+     * Last stage of the pipeline: takes documents from the documents queue and adds them to the index (IndexWriter
+     * is thread-safe, so several writers analyze documents concurrently).
+     */
+    private class WorkerWriting implements Callable<Long> {
+        @Override
+        public Long call() throws InterruptedException {
+            long written = 0;
+            for (Document doc = docsQueue.take(); doc != END_OF_DOCS; doc = docsQueue.take()) {
+                if (updating) {
+                    iwriter.updateDocument(new Term("cordUID", doc.get("cordUID")), doc);
+                } else {
+                    iwriter.addDocument(doc);
+                }
+                written++;
+                writeStage.items.increment();
+                if (Math.floorMod(writeStage.items.sum(), 10000) == 0) {
+                    System.out.println(writeStage.items.sum() + " documents indexed (" + rowsQueue.size() +
+                            " rows and " + docsQueue.size() + " documents queued)");
+                }
+            }
+            if (runningWriters.decrementAndGet() == 0) {
+                writeStage.finish();
+            }
+            return written;
+        }
+    }
 
-                // body: tokenized, term-vectorized, not stored
-                FieldType bodyFieldType = new FieldType();
-                bodyFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
-                bodyFieldType.setStored(false);
-                bodyFieldType.setTokenized(true);
-                bodyFieldType.setStoreTermVectors(true);
-                doc.add(new Field("body", parsedArticle.body(), bodyFieldType));
-
-                // authors: stored, tokenized, not term-vectorized
-                FieldType authorsFieldType = new FieldType();
-                authorsFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
-                authorsFieldType.setStored(true);
-                authorsFieldType.setTokenized(true);
-                authorsFieldType.setStoreTermVectors(false);
-                doc.add(new Field("authors", parsedArticle.authors(), authorsFieldType));
-
-                // references: stored
-                FieldType refFieldType = new FieldType();
-                refFieldType.setStored(true);
-                refFieldType.setTokenized(false);
-                refFieldType.setIndexOptions(IndexOptions.NONE);
-                doc.add(new Field("references", parsedArticle.textReferences(), refFieldType));
-
-                iwriter.addDocument(doc);
+
+    /**
+     * 64-bit FNV-1a hash of the content of an article: its metadata row, the size of its JSON files and its embedding.
+     */
+    private static long contentHash(Metadata rowMetadata) {
+        StringBuilder content = new StringBuilder();
+        content.append(rowMetadata.title()).append('\n').append(rowMetadata.abstractt()).append('\n')
+                .append(rowMetadata.authors()).append('\n').append(rowMetadata.journal()).append('\n');
+        List<String> files = new ArrayList<>();
+        if (!Objects.isNull(rowMetadata.pmcFile())) {
+            files.add(rowMetadata.pmcFile());
+        }
+        if (!Objects.isNull(rowMetadata.pdfFiles())) {
+            files.addAll(rowMetadata.pdfFiles());
+        }
+        for (String file : files) {
+            Path filePath = COLLECTION_PATH.resolve(file);
+            content.append(file).append(':').append(Files.isRegularFile(filePath) ? filePath.toFile().length() : -1)
+                    .append('\n');
+        }
+        float[] embedding = docEmbeddings.get(rowMetadata.cordUID());
+        if (!Objects.isNull(embedding)) {
+            for (float value : embedding) {
+                content.append(Float.floatToIntBits(value)).append(',');
             }
-            System.out.println("Worker " + numWorker + " : Finished");
         }
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < content.length(); i++) {
+            hash ^= content.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
     }
 
 
     /**
-     * Starts the executing pool for collection indexing.
-     * -- First stage -- Basic indexing
-     * 1) Prepare folders. If INDEX_FOLDERNAME and/or TEMP_INDEX_FOLDERNAME already exist, delete them and create a new
-     * IndexWriter of a temporary folder
-     * 2) Read metadata.csv and embeddings.csv.
-     * 3) Create the executor service to launch parallel tasks.
-     * 4) Launch tasks.
-     * 5) Wait until termination and close the executor and the IndexWriter
+     * Starts the indexing pipeline for the collection (the index is produced in a single pass).
+     * 1) Prepare folders. If the index folder already exists, delete it and create a new IndexWriter
+     * 2) Open embeddings store.
+     * 3) Run the pipeline.
+     * 4) Commit the index with the upper bound of its cordIDs.
      */
     public void launch(boolean getReferences) {
         // 1)
-        deleteFolder(INDEX_FOLDERNAME);
-        deleteFolder(TEMP_INDEX_FOLDERNAME);
-        iwriter = new IdxWriter(TEMP_INDEX_FOLDERNAME);
+        iwriter = new IdxWriter(indexFoldername);
+        nextCordID.set(0);
+        updating = false;
+
+        // 2)
+        docEmbeddings = readDocEmbeddings();
+
+        // 3)
+        runPipeline();
+
+        // 4)
+        iwriter.setCommitData(Map.of(IdxReader.NEXT_CORDID_KEY, String.valueOf(nextCordID.get() * numShards)));
+        iwriter.commit();
+        iwriter.close();
+        System.out.println("A total of " + nextCordID.get() + " documents have been indexed");
+    }
+
+
+    /**
+     * Updates the index with the current metadata.csv (new release of the collection) instead of rebuilding it.
+     * 1) Read the cordUID, cordID and content hash of the documents of the index, and open it in append mode.
+     * 2) Open embeddings store.
+     * 3) Run the pipeline: new articles are added with new cordIDs, changed articles replace their documents (keeping
+     * their cordIDs) and unchanged articles are skipped before parsing their JSON files.
+     * 4) Delete the documents whose cordUID is not in the metadata anymore and merge the segments with many deletes.
+     * Deleted documents may keep their docIDs, so the readers of the index skip them (see IdxReader.isLive()).
+     * 5) Commit the index with the upper bound of its cordIDs (cordIDs of deleted documents are not reused).
+     * Since changed documents are indexed again, their PageRank features are empty and PageRank only searches the
+     * references of these documents.
+     */
+    public void update() {
+        // 1)
+        IdxReader ireader = new IdxReader(indexFoldername);
+        indexedDocuments = new HashMap<>();
+        for (int docID = 0; docID < ireader.maxDoc(); docID++) {
+            if (!ireader.isLive(docID)) {
+                continue;
+            }
+            Document doc = ireader.document(docID, Set.of("cordUID", "contentHash"));
+            if (Objects.isNull(doc.getField("contentHash"))) {
+                System.out.println("The index " + indexFoldername + " has no content hashes and it must be rebuilt " +
+                        "with launch()");
+                System.exit(-1);
+            }
+            indexedDocuments.put(doc.get("cordUID"), new IndexedDocument((int) ireader.numericDocValue(docID, "cordID"),
+                    doc.getField("contentHash").numericValue().longValue()));
+        }
+        nextCordID.set((ireader.numCordIDs() + numShards - 1) / numShards);
+        ireader.close();
+        System.out.println("Updating index " + indexFoldername + " with " + indexedDocuments.size() + " documents");
+        iwriter = new IdxWriter(indexFoldername, true);
+        seenCordUIDs = ConcurrentHashMap.newKeySet();
+        updating = true;
 
         // 2)
-        List<Metadata> metadata = readMetadata();
         docEmbeddings = readDocEmbeddings();
 
         // 3)
-        System.out.println("Indexing metadata articles with " + numCores + " cores");
-        ExecutorService executor = Executors.newFixedThreadPool(numCores);
-        System.out.println("A total of " + metadata.size() + " articles will be parsed and indexed");
-        Integer[] workersDivision = coalesce(numCores, metadata.size());
+        runPipeline();
 
         // 4)
-        for (int i = 0; i < numCores; i++) {
-            int start = workersDivision[i];
-            int end = workersDivision[i + 1];
-            List<Metadata> metadataSlice = metadata.subList(start, end);
-            System.out.println("Thread " + i + " is indexing articles from " + start + " to " + end);
-            WorkerIndexing worker = new WorkerIndexing(metadataSlice, i);
-            executor.execute(worker);
+        long deletedDocs = 0;
+        for (String cordUID : indexedDocuments.keySet()) {
+            if (!seenCordUIDs.contains(cordUID)) {
+                iwriter.deleteDocuments(new Term("cordUID", cordUID));
+                deletedDocs++;
+            }
         }
+        iwriter.forceMergeDeletes();
 
         // 5)
-        executor.shutdown();
-        try {
-            executor.awaitTermination(20, TimeUnit.MINUTES);
+        iwriter.setCommitData(Map.of(IdxReader.NEXT_CORDID_KEY, String.valueOf(nextCordID.get() * numShards)));
+        iwriter.commit();
+        iwriter.close();
+        System.out.println("Index updated: " + addedDocs.sum() + " added, " + updatedDocs.sum() + " updated, " +
+                deletedDocs + " deleted and " + unchangedDocs.sum() + " unchanged documents");
+        updating = false;
+    }
 
-        } catch (final InterruptedException e) {
-            e.printStackTrace();
-            System.exit(-2);
+
+    /**
+     * Folder of a shard of the index.
+     */
+    public static String shardFoldername(int shard) {
+        return INDEX_FOLDERNAME + "-shard" + shard;
+    }
+
+    /**
+     * Indexes (or updates) only the articles of a shard of the collection in its own folder, so shards can be built
+     * by different processes.
+     * @param shard Shard to index (0..numShards-1).
+     * @param numShards Number of shards of the collection.
+     * @param update If true, the existing shard is updated (see update()), otherwise it is built from scratch.
+     */
+    public void launchShard(int shard, int numShards, boolean update) {
+        this.shard = shard;
+        this.numShards = numShards;
+        indexFoldername = shardFoldername(shard);
+        System.out.println("Indexing shard " + shard + " of " + numShards + " in " + indexFoldername);
+        if (update) {
+            update();
+        } else {
+            launch(true);
+        }
+        this.shard = 0;
+        this.numShards = 1;
+        indexFoldername = INDEX_FOLDERNAME;
+    }
+
+    /**
+     * Merges the shards of the collection in a single index stored in INDEX_FOLDERNAME (segments are copied, documents
+     * are not analyzed again).
+     * @param numShards Number of shards of the collection.
+     */
+    public static void merge(int numShards) {
+        List<String> shardFoldernames = new ArrayList<>();
+        for (int i = 0; i < numShards; i++) {
+            shardFoldernames.add(shardFoldername(i));
         }
+        IdxReader shardsReader = new IdxReader(shardFoldernames);
+        int numCordIDs = shardsReader.numCordIDs();
+        shardsReader.close();
 
+        iwriter = new IdxWriter(INDEX_FOLDERNAME);
+        iwriter.addIndexes(shardFoldernames);
+        iwriter.setCommitData(Map.of(IdxReader.NEXT_CORDID_KEY, String.valueOf(numCordIDs)));
         iwriter.commit();
         iwriter.close();
+        System.out.println(numShards + " shards merged in " + INDEX_FOLDERNAME);
+    }
 
 
-        /**
-         * -- Second stage -- Adding surrogate keys to the final index
-         * 1) Create a IndexReader from the temporary folder where the index is stored.
-         * 2) Create a new IndexWriter where the final index will be stored.
-         * 3) Sequentially, read all documents saved in the temporary folder and add them in the final folder
-         * with the new surrogate key (cordID).
-         * 4) Close de IndexReader and IndexWriter.
-         * 5) Delete the temporary folder.
-         */
-
+    /**
+     * Runs the indexing pipeline over metadata.csv with the current IndexWriter.
+     * 1) Create the bounded queues and the stages of the pipeline: one reader of metadata.csv, numParsers parser
+     * workers and numWriters writer workers. Full queues block the previous stage (backpressure).
+     * 2) Launch tasks.
+     * 3) Wait until all tasks have finished (any error stops the indexing), report the throughput of each stage and
+     * close the executor.
+     */
+    private void runPipeline() {
         // 1)
-        IdxReader ireader = new IdxReader(TEMP_INDEX_FOLDERNAME);
+        System.out.println("Indexing metadata articles with " + numParsers + " parsers and " + numWriters + " writers");
+        rowsQueue = new ArrayBlockingQueue<>(queueCapacity);
+        docsQueue = new ArrayBlockingQueue<>(queueCapacity);
+        runningParsers = new AtomicInteger(numParsers);
+        runningWriters = new AtomicInteger(numWriters);
+        readStage = new Stage("Reading metadata");
+        parseStage = new Stage("Parsing articles");
+        writeStage = new Stage("Writing documents");
+        ExecutorService executor = Executors.newFixedThreadPool(1 + numParsers + numWriters);
+        CompletionService<Long> tasks = new ExecutorCompletionService<>(executor);
 
         // 2)
-        iwriter = new IdxWriter(INDEX_FOLDERNAME);
+        tasks.submit(new RowsReader());
+        for (int i = 0; i < numParsers; i++) {
+            tasks.submit(new WorkerIndexing(i));
+        }
+        for (int i = 0; i < numWriters; i++) {
+            tasks.submit(new WorkerWriting());
+        }
 
         // 3)
-        int cordID = 0;
-        for (int docID = 0; docID < ireader.numDocs(); docID++) {
-            Document doc = ireader.document(docID);
-            doc.add(new StoredField("cordID", cordID));
-            iwriter.addDocument(doc);
-            cordID++;
+        try {
+            for (int i = 0; i < 1 + numParsers + numWriters; i++) {
+                tasks.take().get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Exception in the indexing pipeline");
+            e.printStackTrace();
+            executor.shutdownNow();
+            System.exit(-1);
         }
-
-        // 4)
-        ireader.close();
-        iwriter.commit();
-        iwriter.close();
-
-        // 5)
-        deleteFolder(TEMP_INDEX_FOLDERNAME);
+        executor.shutdown();
+        System.out.println(readStage);
+        System.out.println(parseStage);
+        System.out.println(writeStage);
     }
 
 
+    /**
+     * Usage:
+     *      PoolIndexing                                    : Builds the index from scratch.
+     *      PoolIndexing update                             : Updates the existing index.
+     *      PoolIndexing shard [shard] [numShards] [update] : Builds (or updates) a shard of the index.
+     *      PoolIndexing merge [numShards]                  : Merges the shards in a single index.
+     */
     public static void main(String[] args) {
         PoolIndexing pool = new PoolIndexing();
         long start;
         long end;
         start = System.currentTimeMillis();
-        pool.launch(true);
+        if (args.length > 0 && args[0].equals("update")) {
+            pool.update();
+        } else if (args.length > 2 && args[0].equals("shard")) {
+            pool.launchShard(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    args.length > 3 && args[3].equals("update"));
+        } else if (args.length > 1 && args[0].equals("merge")) {
+            merge(Integer.parseInt(args[1]));
+        } else {
+            pool.launch(true);
+        }
         end = System.currentTimeMillis();
         System.out.println("Indexing time (seconds): " + (end-start)*0.001);
     }
@@ -6,62 +6,181 @@ import models.*;
 import schemas.TopDocument;
 import schemas.TopicQuery;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.IntStream;
 
 /**
  * Different query computations for the
+ *
+ * Topics can be queried in parallel (see query(typeQuery, numThreads)): models only read the index and the searcher,
+ * so a single model instance is shared by all the threads and results are collected in a concurrent map sorted by
+ * topicID.
+ *
+ * Topics are not modified (each query works on a copy of its topic with the field texts and weights), so the same
+ * topics can be shared by several QueryComputation instances (see ParameterSweep).
+ *
+ * The latencies of the stages of the queries of the model are recorded in a QueryProfiler (see profiler()).
  */
 public class QueryComputation {
     private int n;
     private IdxSearcher isearcher;
     private IdxReader ireader;
-    private Map<Integer, List<TopDocument>> results = new HashMap<>();
+    private Map<Integer, List<TopDocument>> results = new ConcurrentSkipListMap<>();
     private List<TopicQuery> topics;
     private String[] fields = {"title", "abstract", "body"};
-    private float[] weights = {20F, 10F, 5F};
+    private Parameters parameters;
+    private RunFile.Writer runWriter;
+    private QueryProfiler profiler = QueryProfiler.DISABLED;
 
+    /**
+     * Parameters of the retrieval models.
+     * @param weights Weight of the title, abstract and body fields in the query.
+     * @param alpha Rocchio weight of the query embedding (VectorModel).
+     * @param beta Rocchio weight of the relevant embeddings (VectorModel).
+     * @param gamma Rocchio weight of the non-relevant embeddings (VectorModel).
+     * @param iterations Number of Rocchio iterations (VectorModel).
+     * @param numTerms Number of expansion terms of each field (ProbabilityModel).
+     * @param countPageRank Whether to use the count or the binary PageRank (PageRankModel).
+     */
+    public record Parameters(float[] weights, double alpha, double beta, double gamma, int iterations, int numTerms,
+                             boolean countPageRank) {
+        public static final Parameters DEFAULT = new Parameters(new float[]{20F, 10F, 5F}, 0.1, 0.8, 0.5, 5, 2, true);
+    }
 
 
     public QueryComputation(IdxReader ireader, IdxSearcher isearcher, List<TopicQuery> topics, int n) {
+        this(ireader, isearcher, topics, n, Parameters.DEFAULT);
+    }
+
+    public QueryComputation(IdxReader ireader, IdxSearcher isearcher, List<TopicQuery> topics, int n,
+                            Parameters parameters) {
         this.ireader = ireader;
         this.isearcher = isearcher;
         this.topics = topics;
         this.n = n;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Sets a run file writer where the top documents of each topic are written as soon as they are computed.
+     */
+    public void setRunWriter(RunFile.Writer runWriter) {
+        this.runWriter = runWriter;
     }
 
     public Map<Integer, List<TopDocument>> query(int typeQuery) {
+        RetrievalModel model = model(typeQuery);
+
+        List<TopDocument> topDocs;
+        for (TopicQuery topic : topics) {
+            System.out.println("Computing query for topic = " + topic.topicID());
+            TopicQuery topicQuery = setFieldsWeights(topic);
+            long start = profiler.start();
+            topDocs = model.query(topicQuery, n);
+            profiler.record(QueryProfiler.Stage.TOTAL, start);
+            results.put(topicQuery.topicID(), topDocs);
+            writeRun(topicQuery.topicID(), topDocs);
+        }
+        return results;
+    }
+
+    /**
+     * Queries the topics in parallel in a pool of numThreads threads.
+     * @param typeQuery Retrieval model (see model()).
+     * @param numThreads Number of topics queried at the same time (with 1, topics are queried one by one).
+     * @return Top documents of each topic sorted by topicID.
+     */
+    public Map<Integer, List<TopDocument>> query(int typeQuery, int numThreads) {
+        if (numThreads <= 1) {
+            return query(typeQuery);
+        }
+        RetrievalModel model = model(typeQuery);
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (TopicQuery topic : topics) {
+            futures.add(pool.submit(() -> {
+                System.out.println("Computing query for topic = " + topic.topicID());
+                TopicQuery topicQuery = setFieldsWeights(topic);
+                long start = profiler.start();
+                List<TopDocument> topDocs = model.query(topicQuery, n);
+                profiler.record(QueryProfiler.Stage.TOTAL, start);
+                results.put(topicQuery.topicID(), topDocs);
+                writeRun(topicQuery.topicID(), topDocs);
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Exception while computing the queries of the topics");
+            e.printStackTrace();
+            System.exit(-1);
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * Profiler with the latencies of the stages of the last queried model.
+     */
+    public QueryProfiler profiler() {
+        return profiler;
+    }
+
+    private void writeRun(int topicID, List<TopDocument> topDocs) {
+        if (Objects.isNull(runWriter)) {
+            return;
+        }
+        try {
+            runWriter.write(topicID, topDocs);
+        } catch (IOException e) {
+            System.out.println("IOException while writing the results of the topic " + topicID);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    private RetrievalModel model(int typeQuery) {
         RetrievalModel model;
         if (typeQuery==1) {
             model = new BooleanModel(ireader, isearcher);
         } else if (typeQuery==2) {
-            model = new VectorModel(ireader, isearcher, 0.1, 0.8, 0.5, 5);
+            model = new VectorModel(ireader, isearcher, parameters.alpha(), parameters.beta(), parameters.gamma(),
+                    parameters.iterations());
         } else if (typeQuery==3){
-            model = new ProbabilityModel(ireader, isearcher, 2, new String[]{"title", "abstract"});
+            model = new ProbabilityModel(ireader, isearcher, parameters.numTerms(), new String[]{"title", "abstract"});
         } else {
-            model = new PageRankModel(ireader, isearcher, true);
-        }
-
-        List<TopDocument> topDocs;
-        for (TopicQuery topicQuery : topics) {
-            System.out.println("Computing query for topic = " + topicQuery.topicID());
-            setFieldsWeights(topicQuery);
-            topDocs = model.query(topicQuery, n);
-            results.put(topicQuery.topicID(), topDocs);
+            model = new PageRankModel(ireader, isearcher, parameters.countPageRank());
         }
-        return results;
+        profiler = new QueryProfiler(model.getClass().getSimpleName());
+        model.setProfiler(profiler);
+        return model;
     }
 
-    private void setFieldsWeights(TopicQuery topicQuery) {
+    /**
+     * Copy of a topic with the text of the topic in each field and the weights of the fields.
+     */
+    private TopicQuery setFieldsWeights(TopicQuery topic) {
+        TopicQuery topicQuery = topic.copy();
         Map<String, String> fieldTexts = new HashMap<>();
         Map<String, Float> fieldWeights = new HashMap<>();
         IntStream.range(0, fields.length).forEach(
                 i -> {
                     fieldTexts.put(fields[i], topicQuery.text());
-                    fieldWeights.put(fields[i], weights[i]);
+                    fieldWeights.put(fields[i], parameters.weights()[i]);
                 }
         );
         topicQuery.setFieldWeights(fieldWeights);
         topicQuery.setFieldTexts(fieldTexts);
+        return topicQuery;
     }
 }
@@ -2,14 +2,18 @@ package cords;
 
 import lucene.IdxReader;
 import lucene.IdxSearcher;
+import lucene.ShardedSearcher;
+import schemas.Qrels;
 import schemas.TopDocument;
 import schemas.TopicQuery;
 
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
 
 import static cords.CollectionReader.*;
 
@@ -20,118 +24,9 @@ import static cords.CollectionReader.*;
  */
 public class QueryEvaluation {
     private static String INDEX_FOLDERNAME = PoolIndexing.INDEX_FOLDERNAME;
+    public static final String RUN_FILENAME = "round5-submission.txt";
 
 
-    // --------------------------------------------- compute metrics ---------------------------------------------
-    /**
-     * Computes the average precision metric with the top documents returned by a query and the real relevant documents.
-     * @param predictedRelevant Top documents returned by the query.
-     * @param realRelevant Real relevant documents obtained from the relevance judgements file.
-     * @param k Threshold for calculating the precision in each document.
-     * @returns Average precision at k.
-     */
-    public static final Float averagePrecision(List<TopDocument> predictedRelevant, List<String> realRelevant, int k) {
-        float APk = 0;
-        int TPseen = 0;
-
-        // Loop for each document returned by the query
-        for (int i = 0; i < Math.min(predictedRelevant.size(), k); i++) {
-
-            String cordID = predictedRelevant.get(i).cordUID();
-
-            if (realRelevant.contains(cordID)) {
-                TPseen = TPseen + 1;              // add +1 to the TP seen
-                APk = APk + (TPseen / (i+1));     // add TPseen/i to the APk summary
-            }
-        }
-
-        // Once the loop is finished, normalize the APk summary with the min( number of real relevant document, k)
-        APk = APk / Math.min(realRelevant.size(), k);
-
-        return APk;
-    }
-
-    /**
-     * Computes the mean AP metric with the top documents returned by all topic queries and the real relevant documents of each topic.
-     * @param predictedRelevants Map object with the predicted relevant documents of each topic.
-     * @param realRelevants Map object with the real relevant documents of each topic obtained form the relevance_judgments.txt file.
-     * @param k Threshold for calculating the precision in each document.
-     * @returns Mean AP at k over all topics.
-     */
-    public static Float meanAveragePrecision(Map<Integer, List<TopDocument>> predictedRelevants, Map<Integer, List<String>> realRelevants, int k) {
-        float mAPk = 0;
-
-        for (Map.Entry<Integer, List<TopDocument>> topic : predictedRelevants.entrySet()) {
-            float APk = averagePrecision(topic.getValue(), realRelevants.get(topic.getKey()), k);
-            System.out.println("AveragePrecision at k=" + k + " in topic " + topic.getKey() + ": " + APk);
-            mAPk = mAPk + APk;
-        }
-
-        // Normalize the mean average precision
-        mAPk = mAPk / predictedRelevants.size();
-        System.out.println("mAP@" + k + " metric: " + mAPk);
-
-        return mAPk;
-    }
-
-
-    // ------------------------------------------------- save results --------------------------------------------------
-    /**
-     * Generated the TXT file with the submission format specified in the TREC-COVID Challenge once the top documents
-     * of each topic have been obtained.
-     * @param topicsTopDocs Map object with the top documents of each topic.
-     * @param filename File name which results text file will be stored with.
-     * @param cut Number of top documents to submit in the results list.
-     */
-    public static final void generateResults(Map<Integer, List<TopDocument>> topicsTopDocs, String filename, int cut) {
-        // Create the new file (delete previously if it already exists)
-        File file;
-        try {
-            file = new File(filename);
-            if (file.exists()) {
-                file.delete();
-            }
-        } catch (Exception e) {
-            System.out.println("IOException while removing " + filename + " folder");
-        }
-
-        FileWriter writer = null;
-        try {
-            writer = new FileWriter(filename);
-        } catch (Exception e) {
-            System.out.println("Exception occurred while creating the new file: " + filename);
-            e.printStackTrace();
-        }
-
-        // loop for each topic to submit the results
-        String runtag = "ir-ppaa";
-        for (int topic : topicsTopDocs.keySet()) {
-            List<TopDocument> topDocuments = topicsTopDocs.get(topic);    // obtain the top documents
-
-            // add each document
-            for (int i=0; i < cut; i++) {
-                String cordID = topDocuments.get(i).cordUID();
-                String rank = Integer.toString(i);
-                String score = Double.toString(topDocuments.get(i).score());
-
-                try {
-                    writer.write(String.join(" ", Integer.toString(topic), "Q0", cordID, rank, score, runtag, "\n"));
-                } catch (IOException e) {
-                    System.out.println("IOException while saving the results of the document " + i + " of the topic " + topic);
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // Close the writer
-        try {
-            writer.close();
-        } catch (IOException e) {
-            System.out.println("IOException while closing the txt writer");
-            e.printStackTrace();
-        }
-    }
-
     public static void main(String[] args) {
         int n = Integer.parseInt(args[0]);
         int k = Integer.parseInt(args[1]);
@@ -139,26 +34,57 @@ public class QueryEvaluation {
 
         // read topics set and relevance judgements
         List<TopicQuery> topics = readTopics();
-        Map<Integer, List<String>> topicRelevDocs = readRelevanceJudgements();
-
-
-        // create the reader and the searcher
-        IdxReader ireader = new IdxReader(INDEX_FOLDERNAME);
-        IdxSearcher isearcher = new IdxSearcher(ireader);
+        Qrels qrels = readRelevanceJudgements();
+
+
+        // create the reader and the searcher (scatter-gather over the shards if the index is sharded, and segments
+        // searched in parallel if numSegmentThreads > 0)
+        int numShards = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int numThreads = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        int numSegmentThreads = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+        IdxReader ireader;
+        IdxSearcher isearcher;
+        ExecutorService executor = null;
+        if (numShards > 1) {
+            ireader = new IdxReader(IntStream.range(0, numShards).mapToObj(PoolIndexing::shardFoldername).toList());
+            executor = Executors.newFixedThreadPool(numShards);
+            isearcher = new ShardedSearcher(ireader, executor);
+        } else if (numSegmentThreads > 0) {
+            ireader = new IdxReader(INDEX_FOLDERNAME);
+            executor = Executors.newFixedThreadPool(numSegmentThreads);
+            isearcher = new IdxSearcher(ireader, executor);
+        } else {
+            ireader = new IdxReader(INDEX_FOLDERNAME);
+            isearcher = new IdxSearcher(ireader);
+        }
 
-        // Make the queries for each topic query
+        // Make the queries for each topic query (numThreads topics at the same time), writing the results of each
+        // topic in the run file as soon as it is computed
         QueryComputation queryTopics = new QueryComputation(ireader, isearcher, topics, n);
+        Path runPath = COLLECTION_PATH.resolve(RUN_FILENAME);
+        Map<Integer, List<TopDocument>> topicsTopDocs = null;
         long start = System.currentTimeMillis();
-        Map<Integer, List<TopDocument>> topicsTopDocs = queryTopics.query(typeQuery);
+        try (RunFile.Writer runWriter = new RunFile.Writer(runPath, RunFile.RUNTAG, n)) {
+            queryTopics.setRunWriter(runWriter);
+            topicsTopDocs = queryTopics.query(typeQuery, numThreads);
+        } catch (IOException e) {
+            System.out.println("IOException while writing the run file " + runPath);
+            e.printStackTrace();
+            System.exit(-1);
+        }
         long end = System.currentTimeMillis();
 
-        // Generate the results
-        generateResults(topicsTopDocs, COLLECTION_PATH.toString() + "/round5-submission.txt", n);
-
-        // Compute MAP@k metric
-        float mAPk = meanAveragePrecision(topicsTopDocs, topicRelevDocs, k);
-        System.out.println("Final result: " + mAPk);
+        // Compute the metrics of each topic (MAP, R-precision, P@k, nDCG@k and recall)
+        Map<Integer, TrecEvaluation.TopicMetrics> topicsMetrics =
+                TrecEvaluation.evaluate(TrecEvaluation.rankings(topicsTopDocs), qrels, k);
+        System.out.print(TrecEvaluation.format(topicsMetrics, k, true));
+        System.out.println("Final result (MAP): " + TrecEvaluation.mean(topicsMetrics).ap());
         System.out.println("Execution time (seconds): " + (end-start)*0.001);
+        System.out.println("Query latencies (nanoseconds):");
+        System.out.println(queryTopics.profiler().toJson());
+        if (!Objects.isNull(executor)) {
+            executor.shutdown();
+        }
     }
 
 
@@ -0,0 +1,178 @@
+package cords;
+
+import lucene.IdxReader;
+import lucene.IdxSearcher;
+import lucene.QueryFactory;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TopDocs;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolves bibliography entries (title and authors) to the cordIDs of the documents of the index they refer to.
+ *
+ * The same paper is cited in thousands of bibliographies, so each distinct reference is searched only once per run:
+ * resolutions are memoized in a concurrent map keyed by the normalized title and authors (both already normalized by
+ * CollectionReader.parse()). The first thread that misses a key publishes a future and searches it; any other thread
+ * asking for the same key meanwhile waits for that future instead of searching again.
+ *
+ * Before searching, the title is looked up in a TitleIndex: references whose title matches (exactly or near-exactly)
+ * an indexed title are resolved without any Lucene search nor stored field read. Only the unresolved ones fall
+ * through to the matching engine, which is either the Lucene BooleanQuery search (Matching.LUCENE) or a
+ * MinHashMatcher (Matching.MINHASH).
+ *
+ * Global variables:
+ *      m             [int]                    : Maximum number of documents matched with each reference.
+ *      titleIndex    [TitleIndex]             : Exact-title index of the collection (fast path, optional).
+ *      matcher       [MinHashMatcher]         : MinHash/LSH matching engine (if null, Lucene search is used).
+ *      queryFactory  [QueryFactory]           : Builder of the title and authors queries (shared analyzer).
+ *      resolutions   [ConcurrentHashMap]      : Memoized cordIDs of each reference.
+ *      titleWords    [ConcurrentHashMap]      : Distinct words of the title of each docID already verified.
+ *      cordIDs       [ConcurrentHashMap]      : cordID of each docID already verified.
+ */
+public class ReferenceResolver {
+    public enum Matching {LUCENE, MINHASH}
+
+    public static String KEY_SEPARATOR = "\t";
+    private static final Set<String> MATCH_FIELDS = Set.of("title", "cordID");
+
+    private final IdxReader ireader;
+    private final IdxSearcher isearcher;
+    private final int m;
+    private final TitleIndex titleIndex;
+    private final MinHashMatcher matcher;
+    private final QueryFactory queryFactory = new QueryFactory();
+    private final ConcurrentHashMap<String, CompletableFuture<int[]>> resolutions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, List<String>> titleWords = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Integer> cordIDs = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder exactMatches = new LongAdder();
+
+    public ReferenceResolver(IdxReader ireader, IdxSearcher isearcher, int m, TitleIndex titleIndex,
+                             MinHashMatcher matcher) {
+        this.ireader = ireader;
+        this.isearcher = isearcher;
+        this.m = m;
+        this.titleIndex = titleIndex;
+        this.matcher = matcher;
+    }
+
+    /**
+     * Returns the cordIDs of the documents matched with a reference, searching it only if no other thread has done it
+     * before.
+     * @param title Parsed title of the reference.
+     * @param authors Parsed authors of the reference.
+     * @return Array of (at most m) matched cordIDs.
+     */
+    public int[] resolve(String title, String authors) {
+        String key = title + KEY_SEPARATOR + authors;
+        CompletableFuture<int[]> resolution = resolutions.get(key);
+        if (resolution == null) {
+            CompletableFuture<int[]> newResolution = new CompletableFuture<>();
+            resolution = resolutions.putIfAbsent(key, newResolution);
+            if (resolution == null) {
+                misses.increment();
+                try {
+                    int[] matches = search(title, authors);
+                    newResolution.complete(matches);
+                    return matches;
+                } catch (RuntimeException e) {
+                    resolutions.remove(key, newResolution);
+                    newResolution.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        hits.increment();
+        return resolution.join();
+    }
+
+    /**
+     * Searches a reference in the index with a BooleanQuery over title and authors and keeps the first m results whose
+     * title differs in less than 10% of the words (in both directions) from the reference title. If the title is in
+     * the exact-title index, its documents are returned directly, and if a MinHashMatcher is configured it is used
+     * instead of the Lucene search.
+     */
+    private int[] search(String title, String authors) {
+        int[] exactMatch = Objects.isNull(titleIndex) ? null : titleIndex.lookup(title);
+        if (exactMatch != null) {
+            exactMatches.increment();
+            return exactMatch;
+        }
+        if (!Objects.isNull(matcher)) {
+            return matcher.match(title);
+        }
+
+        // references are resolved once each (see resolve()), so their tokens are not cached
+        BooleanQuery.Builder booleanQueryBuilder = new BooleanQuery.Builder();
+        booleanQueryBuilder.add(queryFactory.build("title", title), BooleanClause.Occur.SHOULD);
+        booleanQueryBuilder.add(queryFactory.build("authors", authors), BooleanClause.Occur.SHOULD);
+
+        TopDocs topDocs = isearcher.search(booleanQueryBuilder.build(), 100);
+        String[] refWords = title.split("\\s+");
+        int[] matches = new int[m];
+        int j = 0;
+        for (int i = 0; (i < Math.min(topDocs.scoreDocs.length, topDocs.totalHits.value)) && (j < m); i++) {
+            int docID = topDocs.scoreDocs[i].doc;
+            List<String> matchTitleWords = titleWords(docID);
+
+            // number of words from doc that are not in ref
+            int mismatches = (int) matchTitleWords.stream().filter(x -> !title.contains(x)).count();
+            if (mismatches > 0.1 * matchTitleWords.size()) {
+                continue;
+            }
+
+            // number of words from ref that are not in doc
+            mismatches = (int) Arrays.stream(refWords).filter(x -> !matchTitleWords.contains(x)).count();
+            if (mismatches > 0.1 * refWords.length) {
+                continue;
+            }
+
+            matches[j] = cordIDs.get(docID);
+            j++;
+        }
+        return Arrays.copyOf(matches, j);
+    }
+
+    /**
+     * Distinct words of the title of a document, loading only the title and cordID stored fields the first time.
+     */
+    private List<String> titleWords(int docID) {
+        List<String> words = titleWords.get(docID);
+        if (words == null) {
+            Document doc = ireader.document(docID, MATCH_FIELDS);
+            words = Arrays.stream(doc.get("title").split(" ")).distinct().toList();
+            cordIDs.put(docID, Integer.parseInt(doc.get("cordID")));
+            titleWords.put(docID, words);
+        }
+        return words;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long exactMatches() {
+        return exactMatches.sum();
+    }
+
+    public String toString() {
+        long total = hits() + misses();
+        return "ReferenceResolver: " + misses() + " distinct references resolved (" + exactMatches() +
+                " by exact title, " + (misses() - exactMatches()) + " searched), " + hits() + " cache hits (" +
+                (total == 0 ? 0 : 100 * hits() / total) + "% hit ratio)";
+    }
+}
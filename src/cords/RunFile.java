@@ -0,0 +1,171 @@
+package cords;
+
+import schemas.Qrels;
+import schemas.TopDocument;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static cords.CollectionReader.readRelevanceJudgements;
+
+/**
+ * Reading and writing of run files with the submission format of the TREC-COVID Challenge, one line per retrieved
+ * document: topicID Q0 cordUID rank score runtag.
+ *
+ * Writer appends the results of each topic to the file as soon as the topic is computed (see
+ * QueryComputation.setRunWriter()), and read() loads a run file back into the rankings evaluated by TrecEvaluation, so
+ * old runs can be evaluated again without the index.
+ */
+public class RunFile {
+    public static final String RUNTAG = "ir-ppaa";
+
+    private record Entry(double score, String docID) {}
+
+    /**
+     * Buffered writer of a run file (thread-safe, topics can be written from several threads).
+     *
+     * Global variables:
+     *      writer  [BufferedWriter]  : Writer of the run file.
+     *      runtag  [String]          : Tag of the run.
+     *      cut     [int]             : Maximum number of documents written for each topic.
+     *      line    [StringBuilder]   : Buffer of the line being written.
+     */
+    public static class Writer implements Closeable {
+        private final BufferedWriter writer;
+        private final String runtag;
+        private final int cut;
+        private final StringBuilder line = new StringBuilder(128);
+
+        /**
+         * Creates the run file (replacing it if it already exists).
+         */
+        public Writer(Path path, String runtag, int cut) throws IOException {
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            this.runtag = runtag;
+            this.cut = cut;
+        }
+
+        /**
+         * Writes the (at most cut) top documents of a topic and flushes them to the file.
+         */
+        public synchronized void write(int topicID, List<TopDocument> topDocuments) throws IOException {
+            for (int i = 0; i < Math.min(cut, topDocuments.size()); i++) {
+                TopDocument topDocument = topDocuments.get(i);
+                line.setLength(0);
+                line.append(topicID).append(" Q0 ").append(topDocument.cordUID()).append(' ').append(i).append(' ')
+                        .append(topDocument.score()).append(' ').append(runtag).append('\n');
+                writer.append(line);
+            }
+            writer.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the top documents of all the topics in a new run file, in topicID order.
+     * @param topicsTopDocs Top documents of each topic.
+     * @param path Path of the run file.
+     * @param cut Maximum number of documents of each topic (topics with less documents are written entirely).
+     */
+    public static void write(Map<Integer, List<TopDocument>> topicsTopDocs, Path path, int cut) throws IOException {
+        try (Writer writer = new Writer(path, RUNTAG, cut)) {
+            for (Map.Entry<Integer, List<TopDocument>> topic : new TreeMap<>(topicsTopDocs).entrySet()) {
+                writer.write(topic.getKey(), topic.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads a run file.
+     * @return cordUIDs of each topic ranked as trec_eval does (decreasing score, decreasing cordUID for ties), sorted
+     * by topicID.
+     */
+    public static Map<Integer, List<String>> read(Path path) throws IOException {
+        Map<Integer, List<Entry>> topics = new TreeMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            String[] fields = new String[6];
+            while ((line = reader.readLine()) != null) {
+                if (split(line, fields) < 5) {
+                    continue;
+                }
+                topics.computeIfAbsent(Integer.parseInt(fields[0]), topicID -> new ArrayList<>())
+                        .add(new Entry(Double.parseDouble(fields[4]), fields[2]));
+            }
+        }
+
+        Map<Integer, List<String>> rankings = new TreeMap<>();
+        Comparator<Entry> order = Comparator.comparingDouble(Entry::score).thenComparing(Entry::docID).reversed();
+        for (Map.Entry<Integer, List<Entry>> topic : topics.entrySet()) {
+            List<Entry> entries = topic.getValue();
+            entries.sort(order);
+            List<String> ranking = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                ranking.add(entry.docID());
+            }
+            rankings.put(topic.getKey(), ranking);
+        }
+        return rankings;
+    }
+
+    /**
+     * Splits a line by runs of whitespace into at most fields.length fields.
+     * @return Number of fields of the line.
+     */
+    private static int split(String line, String[] fields) {
+        int numFields = 0;
+        int i = 0;
+        int length = line.length();
+        while (i < length && numFields < fields.length) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                fields[numFields++] = line.substring(start, i);
+            }
+        }
+        return numFields;
+    }
+
+
+    /**
+     * Evaluates a run file with the relevance judgements of the collection (the index is not needed).
+     *
+     * Usage: RunFile runFile k
+     */
+    public static void main(String[] args) {
+        Path path = Paths.get(args[0]);
+        int k = Integer.parseInt(args[1]);
+
+        long start = System.currentTimeMillis();
+        Qrels qrels = readRelevanceJudgements();
+        Map<Integer, List<String>> rankings = null;
+        try {
+            rankings = read(path);
+        } catch (IOException e) {
+            System.out.println("IOException while reading the run file " + path);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        Map<Integer, TrecEvaluation.TopicMetrics> topicsMetrics = TrecEvaluation.evaluate(rankings, qrels, k);
+        long end = System.currentTimeMillis();
+
+        System.out.print(TrecEvaluation.format(topicsMetrics, k, true));
+        System.out.println("Evaluation time (seconds): " + (end-start)*0.001);
+    }
+}
@@ -0,0 +1,69 @@
+package cords;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import formats.Metadata;
+import util.TextSanitizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static cords.CollectionReader.streamMetadata;
+
+/**
+ * Differential check and benchmark of the single-pass and regular expression implementations of util.TextSanitizer.
+ */
+public class TextSanitizerCheck {
+    /**
+     * Compares both implementations over the titles and abstracts of metadata.csv: prints every text whose outputs
+     * differ and the time of each implementation.
+     *
+     * Usage: TextSanitizerCheck [repetitions]
+     */
+    public static void main(String[] args) {
+        int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        List<String> texts = new ArrayList<>();
+        try (MappingIterator<Metadata> metadata = streamMetadata()) {
+            while (metadata.hasNext()) {
+                Metadata row = metadata.next();
+                if (!Objects.isNull(row.title())) {
+                    texts.add(row.title());
+                }
+                if (!Objects.isNull(row.abstractt())) {
+                    texts.add(row.abstractt());
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("Exception while reading metadata texts");
+            e.printStackTrace();
+            System.exit(-1);
+        }
+
+        int mismatches = 0;
+        for (String text : texts) {
+            String expected = TextSanitizer.sanitizeRegex(text);
+            String actual = TextSanitizer.sanitize(text);
+            if (!expected.equals(actual)) {
+                mismatches++;
+                System.out.println("Mismatch for: " + text + "\n\tregex  : " + expected + "\n\tsingle : " + actual);
+            }
+        }
+        System.out.println(texts.size() + " texts compared, " + mismatches + " mismatches");
+
+        for (int rep = 0; rep < repetitions; rep++) {
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (String text : texts) {
+                checksum += TextSanitizer.sanitizeRegex(text).length();
+            }
+            long regexTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String text : texts) {
+                checksum -= TextSanitizer.sanitize(text).length();
+            }
+            long singleTime = System.nanoTime() - start;
+            System.out.println("Repetition " + rep + ": regex " + regexTime / 1000000 + " ms, single pass " +
+                    singleTime / 1000000 + " ms (checksum " + checksum + ")");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package cords;
+
+import lucene.IdxReader;
+import org.apache.lucene.document.Document;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static cords.CollectionReader.parse;
+
+/**
+ * In-memory exact-title index used as a fast path of the references matching: most of the resolvable bibliography
+ * entries have the same title as an indexed document once both are normalized, so they can be matched with a single
+ * hash lookup instead of a Lucene search and the verification of its results.
+ *
+ * The key of each title is a 64-bit fingerprint of its sorted set of distinct tokens after CollectionReader.parse(),
+ * lowercasing and removing trailing punctuation, so differences in case, word order, repeated words and final dots
+ * are considered the same title ("near-exact" match).
+ *
+ * Global variables:
+ *      m        [int]                : Maximum number of cordIDs stored per title (documents with the same title).
+ *      titles   [Map<Long, int[]>]   : cordIDs of the documents of each title fingerprint.
+ */
+public class TitleIndex {
+    private final int m;
+    private final Map<Long, int[]> titles = new ConcurrentHashMap<>();
+
+    /**
+     * Reads the title of every document of the index and stores its fingerprint.
+     * @param ireader Reader of the index.
+     * @param m Maximum number of documents matched with each title.
+     */
+    public TitleIndex(IdxReader ireader, int m) {
+        this.m = m;
+        Set<String> fields = Set.of("title", "cordID");
+        ireader.liveDocIDs().parallel().forEach(
+                docID -> {
+                    Document doc = ireader.document(docID, fields);
+                    if (Objects.isNull(doc.get("title"))) {
+                        return;
+                    }
+                    long fingerprint = fingerprint(parse(doc.get("title")));
+                    if (fingerprint == 0) {
+                        return;
+                    }
+                    int cordID = Integer.parseInt(doc.get("cordID"));
+                    titles.merge(fingerprint, new int[]{cordID}, this::mergeCordIDs);
+                }
+        );
+    }
+
+    private int[] mergeCordIDs(int[] cordIDs, int[] newCordIDs) {
+        int[] merged = IntStream.concat(Arrays.stream(cordIDs), Arrays.stream(newCordIDs)).sorted().toArray();
+        return Arrays.copyOf(merged, Math.min(m, merged.length));
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the sorted set of distinct normalized tokens of a parsed title.
+     * @param parsedTitle Title already normalized with CollectionReader.parse().
+     * @return Fingerprint of the title, or 0 if it has no tokens.
+     */
+    public static long fingerprint(String parsedTitle) {
+        String[] tokens = tokens(parsedTitle);
+        if (tokens.length == 0) {
+            return 0;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (String token : tokens) {
+            for (int i = 0; i < token.length(); i++) {
+                hash ^= token.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= ' ';
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Sorted set of distinct normalized (lowercased and without trailing punctuation) tokens of a parsed title.
+     * @param parsedTitle Title already normalized with CollectionReader.parse().
+     */
+    public static String[] tokens(String parsedTitle) {
+        return Arrays.stream(parsedTitle.toLowerCase(Locale.ROOT).split("\\s+"))
+                .map(TitleIndex::stripPunctuation)
+                .filter(token -> token.length() > 0)
+                .distinct().sorted().toArray(String[]::new);
+    }
+
+    private static String stripPunctuation(String token) {
+        int end = token.length();
+        while (end > 0 && (token.charAt(end - 1) == '.' || token.charAt(end - 1) == ',')) {
+            end--;
+        }
+        return token.substring(0, end);
+    }
+
+    /**
+     * Returns the cordIDs of the documents whose title has the same fingerprint as the reference title.
+     * @param parsedTitle Title of the reference, already normalized with CollectionReader.parse().
+     * @return Array of (at most m) cordIDs or null if no indexed title matches.
+     */
+    public int[] lookup(String parsedTitle) {
+        long fingerprint = fingerprint(parsedTitle);
+        if (fingerprint == 0) {
+            return null;
+        }
+        return titles.get(fingerprint);
+    }
+
+    public int size() {
+        return titles.size();
+    }
+}
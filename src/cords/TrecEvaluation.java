@@ -0,0 +1,177 @@
+package cords;
+
+import schemas.Qrels;
+import schemas.TopDocument;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * Evaluation of the rankings of a run with the relevance judgements, following the definitions of trec_eval:
+ * - Documents of each topic are ranked by decreasing score, ties broken by decreasing docID (see rankings()).
+ * - A document is relevant if its relevance is at least Qrels.RELEVANCE_LEVEL; nDCG uses the graded relevance as gain.
+ * - Means are taken over the topics of the run that are judged.
+ *
+ * Topics are evaluated in parallel, each one in a single pass over its ranking with hash lookups of the relevance.
+ */
+public class TrecEvaluation {
+    /**
+     * Metrics of a topic.
+     * @param numRet Number of retrieved documents.
+     * @param numRel Number of relevant documents in the relevance judgements.
+     * @param numRelRet Number of relevant retrieved documents.
+     * @param ap Average precision over the whole ranking.
+     * @param rPrec Precision at rank numRel.
+     * @param precision Precision at rank k.
+     * @param ndcg Normalized discounted cumulative gain at rank k.
+     * @param recall Fraction of relevant documents retrieved.
+     */
+    public record TopicMetrics(int numRet, int numRel, int numRelRet, double ap, double rPrec, double precision,
+                               double ndcg, double recall) {}
+
+    /**
+     * Converts the top documents of each topic to the docIDs (cordUIDs) of each topic in the order of trec_eval:
+     * decreasing score and decreasing docID for equal scores.
+     */
+    public static Map<Integer, List<String>> rankings(Map<Integer, List<TopDocument>> topicsTopDocs) {
+        Map<Integer, List<String>> rankings = new TreeMap<>();
+        for (Map.Entry<Integer, List<TopDocument>> topic : topicsTopDocs.entrySet()) {
+            List<TopDocument> sorted = new ArrayList<>(topic.getValue());
+            sorted.sort(Comparator.comparingDouble(TopDocument::score).reversed()
+                    .thenComparing(TopDocument::cordUID, Comparator.reverseOrder()));
+            rankings.put(topic.getKey(), sorted.stream().map(TopDocument::cordUID).toList());
+        }
+        return rankings;
+    }
+
+    /**
+     * Evaluates the ranking of each judged topic in parallel.
+     * @param rankings docIDs of each topic in rank order.
+     * @param qrels Relevance judgements.
+     * @param k Cutoff of precision and nDCG.
+     * @return Metrics of each judged topic of the run, sorted by topicID.
+     */
+    public static Map<Integer, TopicMetrics> evaluate(Map<Integer, List<String>> rankings, Qrels qrels, int k) {
+        return rankings.keySet().parallelStream()
+                .filter(qrels::contains)
+                .collect(Collectors.toConcurrentMap(
+                        topicID -> topicID,
+                        topicID -> evaluate(topicID, rankings.get(topicID), qrels, k),
+                        (metrics1, metrics2) -> metrics1,
+                        ConcurrentSkipListMap::new));
+    }
+
+    /**
+     * Evaluates the ranking of a topic.
+     */
+    public static TopicMetrics evaluate(int topicID, List<String> ranking, Qrels qrels, int k) {
+        int numRel = qrels.numRelevant(topicID);
+        int numRelRet = 0;
+        int relAtK = 0;
+        int relAtR = 0;
+        double sumPrecision = 0;
+        double dcg = 0;
+
+        int rank = 0;
+        for (String docID : ranking) {
+            int relevance = qrels.relevance(topicID, docID);
+            if (relevance >= Qrels.RELEVANCE_LEVEL) {
+                numRelRet++;
+                sumPrecision += (double) numRelRet / (rank + 1);
+                if (rank < k) {
+                    relAtK++;
+                }
+                if (rank < numRel) {
+                    relAtR++;
+                }
+            }
+            if (rank < k && relevance > 0) {
+                dcg += relevance / log2(rank + 2);
+            }
+            rank++;
+        }
+
+        // ideal DCG at k with the judged relevance values in decreasing order
+        int[] idealGains = qrels.idealGains(topicID);
+        double idealDcg = 0;
+        for (int i = 0; i < Math.min(k, idealGains.length); i++) {
+            idealDcg += idealGains[i] / log2(i + 2);
+        }
+
+        return new TopicMetrics(
+                ranking.size(),
+                numRel,
+                numRelRet,
+                numRel == 0 ? 0 : sumPrecision / numRel,
+                numRel == 0 ? 0 : (double) relAtR / numRel,
+                (double) relAtK / k,
+                idealDcg == 0 ? 0 : dcg / idealDcg,
+                numRel == 0 ? 0 : (double) numRelRet / numRel
+        );
+    }
+
+    private static double log2(double x) {
+        return Math.log(x) / Math.log(2);
+    }
+
+    /**
+     * Means of the metrics over the evaluated topics (counts are summed, as trec_eval does).
+     */
+    public static TopicMetrics mean(Map<Integer, TopicMetrics> topicsMetrics) {
+        int n = Math.max(1, topicsMetrics.size());
+        Collection<TopicMetrics> metrics = topicsMetrics.values();
+        return new TopicMetrics(
+                metrics.stream().mapToInt(TopicMetrics::numRet).sum(),
+                metrics.stream().mapToInt(TopicMetrics::numRel).sum(),
+                metrics.stream().mapToInt(TopicMetrics::numRelRet).sum(),
+                metrics.stream().mapToDouble(TopicMetrics::ap).sum() / n,
+                metrics.stream().mapToDouble(TopicMetrics::rPrec).sum() / n,
+                metrics.stream().mapToDouble(TopicMetrics::precision).sum() / n,
+                metrics.stream().mapToDouble(TopicMetrics::ndcg).sum() / n,
+                metrics.stream().mapToDouble(TopicMetrics::recall).sum() / n
+        );
+    }
+
+    /**
+     * Formats the metrics of each topic (if perTopic) and their means as the output of trec_eval (measure, topic or
+     * "all", value).
+     */
+    public static String format(Map<Integer, TopicMetrics> topicsMetrics, int k, boolean perTopic) {
+        StringBuilder builder = new StringBuilder();
+        if (perTopic) {
+            for (Map.Entry<Integer, TopicMetrics> topic : topicsMetrics.entrySet()) {
+                format(builder, topic.getKey().toString(), topic.getValue(), k, -1);
+            }
+        }
+        format(builder, "all", mean(topicsMetrics), k, topicsMetrics.size());
+        return builder.toString();
+    }
+
+    private static void format(StringBuilder builder, String topic, TopicMetrics metrics, int k, int numQueries) {
+        if (numQueries >= 0) {
+            line(builder, "num_q", topic, Integer.toString(numQueries));
+        }
+        line(builder, "num_ret", topic, Integer.toString(metrics.numRet()));
+        line(builder, "num_rel", topic, Integer.toString(metrics.numRel()));
+        line(builder, "num_rel_ret", topic, Integer.toString(metrics.numRelRet()));
+        line(builder, "map", topic, decimal(metrics.ap()));
+        line(builder, "Rprec", topic, decimal(metrics.rPrec()));
+        line(builder, "P_" + k, topic, decimal(metrics.precision()));
+        line(builder, "ndcg_cut_" + k, topic, decimal(metrics.ndcg()));
+        line(builder, "recall", topic, decimal(metrics.recall()));
+    }
+
+    /**
+     * Value with 4 decimals rounded as printf() does in trec_eval (exact binary value, ties to even).
+     */
+    private static String decimal(double value) {
+        return new BigDecimal(value).setScale(4, RoundingMode.HALF_EVEN).toPlainString();
+    }
+
+    private static void line(StringBuilder builder, String measure, String topic, String value) {
+        builder.append(String.format(Locale.ROOT, "%-22s\t%s\t%s%n", measure, topic, value));
+    }
+}
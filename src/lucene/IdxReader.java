@@ -2,22 +2,63 @@ package lucene;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 public class IdxReader {
+    public static final String NEXT_CORDID_KEY = "nextCordID";
+    public static final String EMBEDDING_FIELD = "knn-embedding";
     private IndexReader reader;
     private String foldername;
+    private List<IndexReader> shards;
+    private Bits liveDocs;
+    private double[] embeddingSum;
+    private int numEmbeddings;
 
     public IdxReader(String foldername) {
         this.foldername = foldername;
+        reader = open(foldername);
+        shards = List.of(reader);
+        liveDocs = MultiBits.getLiveDocs(reader);
+    }
+
+    /**
+     * Reads several indexes (shards of the collection) as a single index: docIDs of each shard follow the ones of the
+     * previous shards and statistics are computed over all of them.
+     * @param foldernames Folders of the shards.
+     */
+    public IdxReader(List<String> foldernames) {
+        this.foldername = String.join(",", foldernames);
+        shards = new ArrayList<>();
+        for (String shardFoldername : foldernames) {
+            shards.add(open(shardFoldername));
+        }
+        try {
+            reader = new MultiReader(shards.toArray(new IndexReader[0]), true);
+            liveDocs = MultiBits.getLiveDocs(reader);
+        } catch (IOException e) {
+            System.out.println("IOException while reading " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    private static DirectoryReader open(String foldername) {
+        DirectoryReader directoryReader = null;
         try {
             Directory directory = FSDirectory.open(Paths.get(foldername));
-            reader = DirectoryReader.open(directory);
+            directoryReader = DirectoryReader.open(directory);
         } catch (CorruptIndexException e) {
             System.out.println("CorruptIndexException while reading " + foldername);
             e.printStackTrace();
@@ -27,12 +68,60 @@ public class IdxReader {
             e.printStackTrace();
             System.exit(-1);
         }
+        return directoryReader;
     }
 
     public int numDocs() {
         return reader.numDocs();
     }
 
+    /**
+     * Upper bound (exclusive) of the docIDs of the index. After an update of the index (see PoolIndexing.update())
+     * the docIDs of deleted documents are not always merged away, so loops over the documents go up to maxDoc() and
+     * skip the deleted ones (see isLive() and liveDocIDs()).
+     */
+    public int maxDoc() {
+        return reader.maxDoc();
+    }
+
+    /**
+     * Whether a docID belongs to a document that is not deleted.
+     */
+    public boolean isLive(int docID) {
+        return liveDocs == null || liveDocs.get(docID);
+    }
+
+    /**
+     * docIDs of the documents that are not deleted, in increasing order.
+     */
+    public IntStream liveDocIDs() {
+        return IntStream.range(0, maxDoc()).filter(this::isLive);
+    }
+
+    /**
+     * Upper bound (exclusive) of the cordIDs of the index. cordIDs are dense after a full indexing, but updates of the
+     * index (see PoolIndexing.update()) keep the cordIDs of the documents and leave the ones of deleted documents
+     * unused, so arrays indexed by cordID must have this size instead of numDocs().
+     */
+    public int numCordIDs() {
+        int numCordIDs = 0;
+        for (IndexReader shard : shards) {
+            String nextCordID = null;
+            try {
+                nextCordID = ((DirectoryReader) shard).getIndexCommit().getUserData().get(NEXT_CORDID_KEY);
+            } catch (IOException e) {
+                System.out.println("IOException while reading commit data of " + foldername);
+                e.printStackTrace();
+                System.exit(-1);
+            }
+            if (nextCordID == null) {
+                return numDocs();
+            }
+            numCordIDs = Math.max(numCordIDs, Integer.parseInt(nextCordID));
+        }
+        return numCordIDs;
+    }
+
     public Document document(int docID) {
         Document doc = null;
         try {
@@ -45,6 +134,162 @@ public class IdxReader {
         return doc;
     }
 
+    /**
+     * Loads only the given stored fields of a document.
+     * @param docID Document identifier.
+     * @param fields Names of the stored fields to load.
+     */
+    public Document document(int docID, Set<String> fields) {
+        Document doc = null;
+        try {
+            doc = reader.document(docID, fields);
+        } catch (IOException e) {
+            System.out.println("IOException while reading document with docID=" + docID + " in " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return doc;
+    }
+
+    /**
+     * Loads only the given stored fields of a document with a SelectiveFieldVisitor, which stops reading the document
+     * once all of them have been visited.
+     * @param docID Document identifier.
+     * @param fields Names of the stored fields to load.
+     * @return Value (as a string) of each loaded field.
+     */
+    public Map<String, String> storedFields(int docID, Set<String> fields) {
+        SelectiveFieldVisitor visitor = new SelectiveFieldVisitor(fields);
+        try {
+            reader.document(docID, visitor);
+        } catch (IOException e) {
+            System.out.println("IOException while reading document with docID=" + docID + " in " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return visitor.values();
+    }
+
+    /**
+     * Returns the value of a binary doc values field of a document as a string, or null if the document has no value.
+     */
+    public String binaryDocValue(int docID, String field) {
+        String value = null;
+        try {
+            LeafReaderContext leaf = reader.leaves().get(ReaderUtil.subIndex(docID, reader.leaves()));
+            BinaryDocValues docValues = leaf.reader().getBinaryDocValues(field);
+            if (docValues != null && docValues.advanceExact(docID - leaf.docBase)) {
+                value = docValues.binaryValue().utf8ToString();
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while reading doc values " + field + " of document " + docID);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of a double doc values field (see DoubleDocValuesField) of a document, or 0 if the document
+     * has no value.
+     */
+    public double doubleDocValue(int docID, String field) {
+        return Double.longBitsToDouble(numericDocValue(docID, field));
+    }
+
+    /**
+     * Returns the value of a numeric doc values field of a document, or 0 if the document has no value.
+     */
+    public long numericDocValue(int docID, String field) {
+        long value = 0;
+        try {
+            LeafReaderContext leaf = reader.leaves().get(ReaderUtil.subIndex(docID, reader.leaves()));
+            NumericDocValues docValues = leaf.reader().getNumericDocValues(field);
+            if (docValues != null && docValues.advanceExact(docID - leaf.docBase)) {
+                value = docValues.longValue();
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while reading doc values " + field + " of document " + docID);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the embedding of a document read from the vector values of the KNN field (binary, no parsing), or null
+     * if the document has no embedding.
+     */
+    public float[] embedding(int docID) {
+        float[] vector = null;
+        try {
+            LeafReaderContext leaf = reader.leaves().get(ReaderUtil.subIndex(docID, reader.leaves()));
+            VectorValues vectorValues = leaf.reader().getVectorValues(EMBEDDING_FIELD);
+            if (vectorValues != null && vectorValues.advance(docID - leaf.docBase) == docID - leaf.docBase) {
+                vector = vectorValues.vectorValue().clone();
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while reading the embedding of document " + docID);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return vector;
+    }
+
+    /**
+     * Sum of the embeddings of all the (live) documents of the index. It is computed the first time it is requested
+     * and cached for the lifetime of the reader.
+     */
+    public synchronized double[] embeddingSum() {
+        if (embeddingSum == null) {
+            sumEmbeddings();
+        }
+        return embeddingSum;
+    }
+
+    /**
+     * Number of (live) documents of the index with an embedding.
+     */
+    public synchronized int numEmbeddings() {
+        if (embeddingSum == null) {
+            sumEmbeddings();
+        }
+        return numEmbeddings;
+    }
+
+    private void sumEmbeddings() {
+        double[] sum = new double[0];
+        int count = 0;
+        try {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                VectorValues vectorValues = leaf.reader().getVectorValues(EMBEDDING_FIELD);
+                if (vectorValues == null) {
+                    continue;
+                }
+                if (sum.length == 0) {
+                    sum = new double[vectorValues.dimension()];
+                }
+                Bits liveDocs = leaf.reader().getLiveDocs();
+                for (int doc = vectorValues.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = vectorValues.nextDoc()) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    float[] vector = vectorValues.vectorValue();
+                    for (int i = 0; i < sum.length; i++) {
+                        sum[i] += vector[i];
+                    }
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while reading the embeddings of " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        embeddingSum = sum;
+        numEmbeddings = count;
+    }
+
     public String foldername() {
         return foldername;
     }
@@ -53,6 +298,13 @@ public class IdxReader {
         return reader;
     }
 
+    /**
+     * Readers of the shards of the index (a single one if the index is not sharded), in docID order.
+     */
+    public List<IndexReader> shards() {
+        return shards;
+    }
+
     public void close() {
         try {
             reader.close();
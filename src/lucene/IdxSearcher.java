@@ -3,8 +3,10 @@ package lucene;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.Similarity;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 public class IdxSearcher {
     private IndexSearcher searcher;
@@ -15,6 +17,26 @@ public class IdxSearcher {
         searcher = new IndexSearcher(reader.reader());
     }
 
+    /**
+     * Searcher that searches the segments of the index in parallel in an executor.
+     * @param reader Reader of the index.
+     * @param executor Executor where the slices of segments of each query are searched.
+     */
+    public IdxSearcher(IdxReader reader, ExecutorService executor) {
+        this.foldername = reader.foldername();
+        searcher = new IndexSearcher(reader.reader(), executor);
+    }
+
+    /**
+     * Searcher that scores with a given similarity (the reader can be shared by searchers with different similarities).
+     * @param reader Reader of the index.
+     * @param similarity Similarity of the searcher.
+     */
+    public IdxSearcher(IdxReader reader, Similarity similarity) {
+        this(reader);
+        searcher.setSimilarity(similarity);
+    }
+
     public TopDocs search(Query query, int top) {
         TopDocs topDocs = null;
         try {
@@ -3,30 +3,52 @@ package lucene;
 import cords.PoolIndexing;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.CorruptIndexException;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.LockObtainFailedException;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 
 import static util.AuxiliarFunctions.deleteFolder;
 
 public class IdxWriter {
     private IndexWriter writer;
     private String foldername;
+    private PersistentSnapshotDeletionPolicy snapshots;
 
     public IdxWriter(String foldername) {
-        deleteFolder(foldername);
+        this(foldername, false);
+    }
+
+    /**
+     * @param foldername Folder of the index.
+     * @param append If true, the existing index is opened to update it in place and its commit points can be
+     *               protected with snapshot(). Otherwise the folder is deleted and a new index is created.
+     */
+    public IdxWriter(String foldername, boolean append) {
+        if (!append) {
+            deleteFolder(foldername);
+        }
         IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
         config.setSimilarity(PoolIndexing.similarity);
 
         this.foldername = foldername;
 
         try {
-            writer = new IndexWriter(FSDirectory.open(Paths.get(foldername)), config);
+            Directory directory = FSDirectory.open(Paths.get(foldername));
+            if (append) {
+                config.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
+                snapshots = new PersistentSnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy(), directory);
+                config.setIndexDeletionPolicy(snapshots);
+            }
+            writer = new IndexWriter(directory, config);
         } catch (CorruptIndexException e) {
             System.out.println("CorruptIndexException while creating IndexWriter at " + foldername);
             e.printStackTrace();
@@ -53,6 +75,190 @@ public class IdxWriter {
         }
     }
 
+    /**
+     * Replaces the documents that contain the term (usually the cordUID of a document) by a new document, or adds it
+     * if no document contains the term.
+     */
+    public void updateDocument(Term term, Document doc) {
+        try {
+            writer.updateDocument(term, doc);
+        } catch (IOException e) {
+            System.out.println("IOException while updating document with " + term.field() + "=" + term.text() +
+                    " in index " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Deletes the documents that contain the term (usually the cordUID of a document).
+     */
+    public void deleteDocuments(Term term) {
+        try {
+            writer.deleteDocuments(term);
+        } catch (IOException e) {
+            System.out.println("IOException while deleting documents with " + term.field() + "=" + term.text() +
+                    " in index " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Merges the segments with many deleted documents to reclaim their space (with the default merge policy, segments
+     * with less than 10% of deleted documents are kept), so docIDs of deleted documents may remain in the index.
+     */
+    public void forceMergeDeletes() {
+        try {
+            writer.forceMergeDeletes();
+        } catch (IOException e) {
+            System.out.println("IOException while merging deletes of index " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Sets the user data stored with the next commit (it is kept by the following commits until it is set again).
+     */
+    public void setCommitData(Map<String, String> commitData) {
+        writer.setLiveCommitData(commitData.entrySet());
+    }
+
+    /**
+     * Adds the segments of other indexes to this index.
+     * @param foldernames Folders of the indexes.
+     */
+    public void addIndexes(List<String> foldernames) {
+        try {
+            Directory[] directories = new Directory[foldernames.size()];
+            for (int i = 0; i < directories.length; i++) {
+                directories[i] = FSDirectory.open(Paths.get(foldernames.get(i)));
+            }
+            writer.addIndexes(directories);
+            for (Directory directory : directories) {
+                directory.close();
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while adding indexes " + foldernames + " to index " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Updates in place the doc values of the documents that contain the term (usually the cordID of a document),
+     * without reindexing them. The doc values fields must already exist in the index.
+     * @param term Term that identifies the documents.
+     * @param updates Doc values fields with the new values.
+     */
+    public void updateDocValues(Term term, Field... updates) {
+        try {
+            writer.updateDocValues(term, updates);
+        } catch (IOException e) {
+            System.out.println("IOException while updating doc values of documents with " + term.field() + "=" +
+                    term.text() + " in index " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Protects the last commit point of the index from being deleted until it is released, even across processes
+     * (the snapshot is persisted in the index folder). Only available when the index is opened in append mode.
+     */
+    public IndexCommit snapshot() {
+        checkSnapshots();
+        IndexCommit commit = null;
+        try {
+            commit = snapshots.snapshot();
+        } catch (IOException e) {
+            System.out.println("IOException while taking a snapshot of the index " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return commit;
+    }
+
+    /**
+     * Releases a snapshot taken with snapshot(), so its files are deleted once they are not used by newer commits.
+     */
+    public void release(IndexCommit commit) {
+        checkSnapshots();
+        try {
+            snapshots.release(commit);
+            writer.deleteUnusedFiles();
+        } catch (IOException e) {
+            System.out.println("IOException while releasing the snapshot " + commit.getGeneration() + " of the index " +
+                    foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Commit points protected by snapshots that have not been released yet (e.g. by a process that crashed), from the
+     * oldest to the newest.
+     */
+    public List<IndexCommit> snapshots() {
+        checkSnapshots();
+        List<IndexCommit> commits = new ArrayList<>(snapshots.getSnapshots());
+        commits.sort(Comparator.comparingLong(IndexCommit::getGeneration));
+        return commits;
+    }
+
+    private void checkSnapshots() {
+        if (snapshots == null) {
+            System.out.println("Snapshots of the index " + foldername + " are only available when it is opened in " +
+                    "append mode (new IdxWriter(foldername, true))");
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Restores the index to its oldest commit point protected by a snapshot (the commit before a stage that did not
+     * finish) and releases all the snapshots, so the commits made after it are deleted.
+     * @param foldername Folder of the index.
+     * @return Generation of the restored commit, or -1 if the index has no snapshots.
+     */
+    public static long rollback(String foldername) {
+        IdxWriter iwriter = new IdxWriter(foldername, true);
+        List<IndexCommit> commits = iwriter.snapshots();
+        iwriter.close();
+        if (commits.isEmpty()) {
+            return -1;
+        }
+
+        long generation = commits.get(0).getGeneration();
+        try {
+            Directory directory = FSDirectory.open(Paths.get(foldername));
+            IndexCommit restored = null;
+            for (IndexCommit commit : DirectoryReader.listCommits(directory)) {
+                if (commit.getGeneration() == generation) {
+                    restored = commit;
+                }
+            }
+            PersistentSnapshotDeletionPolicy policy =
+                    new PersistentSnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy(), directory);
+            IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer())
+                    .setOpenMode(IndexWriterConfig.OpenMode.APPEND)
+                    .setIndexDeletionPolicy(policy)
+                    .setIndexCommit(restored);
+            try (IndexWriter writer = new IndexWriter(directory, config)) {
+                writer.commit();
+                for (IndexCommit commit : policy.getSnapshots()) {
+                    policy.release(commit);
+                }
+                writer.deleteUnusedFiles();
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while restoring the commit " + generation + " of the index " + foldername);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return generation;
+    }
+
     public void close() {
         try {
             writer.close();
@@ -0,0 +1,116 @@
+package lucene;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared construction of the queries of the retrieval models and the references resolution. A single instance can be
+ * used by any number of threads:
+ * - The analyzer is created once and shared (Lucene analyzers are thread-safe).
+ * - parse() uses the classic QueryParser syntax with one parser per field and thread.
+ * - build() analyzes the text and builds the disjunction of its terms directly, without any query syntax, so the text
+ * does not need to be escaped. Analyzed tokens of each (field, text) can be cached.
+ *
+ * Global variables:
+ *      analyzer   [Analyzer]                        : Analyzer of every query.
+ *      parsers    [ThreadLocal]                     : Query parser of each field of the current thread.
+ *      cacheSize  [int]                             : Maximum number of cached token lists (0 disables the cache).
+ *      tokens     [ConcurrentHashMap]               : Cached analyzed tokens of each (field, text).
+ */
+public class QueryFactory {
+    private static final String KEY_SEPARATOR = "\u0000";
+
+    private final Analyzer analyzer;
+    private final ThreadLocal<Map<String, QueryParser>> parsers = ThreadLocal.withInitial(HashMap::new);
+    private final int cacheSize;
+    private final ConcurrentHashMap<String, List<String>> tokens = new ConcurrentHashMap<>();
+
+    public QueryFactory() {
+        this(new StandardAnalyzer(), 0);
+    }
+
+    public QueryFactory(Analyzer analyzer, int cacheSize) {
+        this.analyzer = analyzer;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Parses a text with the classic query syntax.
+     * @param field Default field of the query.
+     * @param text Text of the query.
+     */
+    public Query parse(String field, String text) throws ParseException {
+        QueryParser parser = parsers.get().computeIfAbsent(field, name -> new QueryParser(name, analyzer));
+        return parser.parse(text);
+    }
+
+    /**
+     * Builds the disjunction (SHOULD clauses) of the analyzed terms of a text in a field. Every token adds a clause,
+     * as the query parser does, so scores are the same as the ones of parse() with a text without query syntax.
+     * @param field Field of the terms.
+     * @param text Text of the query (it is not interpreted).
+     */
+    public Query build(String field, String text) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (String token : tokens(field, text)) {
+            builder.add(new TermQuery(new Term(field, token)), BooleanClause.Occur.SHOULD);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Analyzed tokens of a text in a field (from the cache if it is enabled).
+     */
+    public List<String> tokens(String field, String text) {
+        if (cacheSize == 0) {
+            return analyze(field, text);
+        }
+        String key = field + KEY_SEPARATOR + text;
+        List<String> cached = tokens.get(key);
+        if (cached == null) {
+            cached = analyze(field, text);
+            if (tokens.size() >= cacheSize) {
+                tokens.clear();
+            }
+            tokens.put(key, cached);
+        }
+        return cached;
+    }
+
+    private List<String> analyze(String field, String text) {
+        List<String> terms = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream(field, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                terms.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            System.out.println("IOException while analyzing: " + text);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return List.copyOf(terms);
+    }
+
+    public Analyzer analyzer() {
+        return analyzer;
+    }
+}
@@ -0,0 +1,65 @@
+package lucene;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.StoredFieldVisitor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stored fields visitor that only decodes the requested fields of a document and stops reading it as soon as all of
+ * them have been visited, so large fields stored after them (e.g. references) are never decoded.
+ *
+ * Global variables:
+ *      fields  [Set<String>]          : Names of the stored fields to load.
+ *      values  [Map<String, String>]  : Value (as a string) of each visited field.
+ */
+public class SelectiveFieldVisitor extends StoredFieldVisitor {
+    private final Set<String> fields;
+    private final Map<String, String> values = new HashMap<>();
+
+    public SelectiveFieldVisitor(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    @Override
+    public Status needsField(FieldInfo fieldInfo) {
+        if (values.size() == fields.size()) {
+            return Status.STOP;
+        }
+        return fields.contains(fieldInfo.name) && !values.containsKey(fieldInfo.name) ? Status.YES : Status.NO;
+    }
+
+    @Override
+    public void stringField(FieldInfo fieldInfo, String value) {
+        values.put(fieldInfo.name, value);
+    }
+
+    @Override
+    public void intField(FieldInfo fieldInfo, int value) {
+        values.put(fieldInfo.name, Integer.toString(value));
+    }
+
+    @Override
+    public void longField(FieldInfo fieldInfo, long value) {
+        values.put(fieldInfo.name, Long.toString(value));
+    }
+
+    @Override
+    public void floatField(FieldInfo fieldInfo, float value) {
+        values.put(fieldInfo.name, Float.toString(value));
+    }
+
+    @Override
+    public void doubleField(FieldInfo fieldInfo, double value) {
+        values.put(fieldInfo.name, Double.toString(value));
+    }
+
+    /**
+     * Values of the visited fields (requested fields that the document does not have are missing).
+     */
+    public Map<String, String> values() {
+        return values;
+    }
+}
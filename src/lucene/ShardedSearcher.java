@@ -0,0 +1,96 @@
+package lucene;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Scatter-gather searcher over the shards of a sharded IdxReader: each query is searched in all shards in parallel
+ * and their top documents are merged with TopDocs.merge().
+ *
+ * Shard searchers score with the statistics of the whole collection (document frequencies, total term frequencies
+ * and field statistics are taken from the reader of all shards), so scores of different shards are comparable and
+ * the merged ranking is the same as the one of a single index. Merged docIDs are the docIDs of the sharded IdxReader.
+ *
+ * Global variables:
+ *      shardSearchers  [List<IndexSearcher>]  : Searcher of each shard with global statistics.
+ *      docBases        [int[]]                : First docID of each shard in the sharded IdxReader.
+ *      executor        [ExecutorService]      : Executor where shard searches are run.
+ */
+public class ShardedSearcher extends IdxSearcher {
+    private final List<IndexSearcher> shardSearchers = new ArrayList<>();
+    private final int[] docBases;
+    private final ExecutorService executor;
+
+    /**
+     * Searcher of a shard that replaces its local statistics by the statistics of the whole collection.
+     */
+    private static class ShardSearcher extends IndexSearcher {
+        private final IndexSearcher global;
+
+        private ShardSearcher(IndexReader shard, IndexSearcher global) {
+            super(shard);
+            this.global = global;
+        }
+
+        @Override
+        public TermStatistics termStatistics(Term term, int docFreq, long totalTermFreq) throws IOException {
+            IndexReader globalReader = global.getIndexReader();
+            return global.termStatistics(term, globalReader.docFreq(term), globalReader.totalTermFreq(term));
+        }
+
+        @Override
+        public CollectionStatistics collectionStatistics(String field) throws IOException {
+            return global.collectionStatistics(field);
+        }
+    }
+
+    public ShardedSearcher(IdxReader reader, ExecutorService executor) {
+        super(reader);
+        this.executor = executor;
+        List<IndexReader> shards = reader.shards();
+        docBases = new int[shards.size()];
+        int docBase = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            docBases[i] = docBase;
+            docBase += shards.get(i).maxDoc();
+            shardSearchers.add(new ShardSearcher(shards.get(i), searcher()));
+        }
+    }
+
+    @Override
+    public TopDocs search(Query query, int top) {
+        TopDocs[] shardHits = new TopDocs[shardSearchers.size()];
+        try {
+            List<Future<TopDocs>> futures = new ArrayList<>();
+            for (IndexSearcher shardSearcher : shardSearchers) {
+                futures.add(executor.submit(() -> shardSearcher.search(query, top)));
+            }
+            // map shard docIDs to docIDs of the sharded reader (shardIndex breaks ties of equal scores in the merge)
+            for (int i = 0; i < shardHits.length; i++) {
+                shardHits[i] = futures.get(i).get();
+                for (ScoreDoc scoreDoc : shardHits[i].scoreDocs) {
+                    scoreDoc.doc += docBases[i];
+                    scoreDoc.shardIndex = i;
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Exception while searching in " + this + " the query " + query.toString());
+            e.printStackTrace();
+            System.exit(-1);
+        }
+
+        return TopDocs.merge(top, shardHits);
+    }
+
+    public int numShards() {
+        return shardSearchers.size();
+    }
+}
@@ -2,9 +2,8 @@ package models;
 
 import lucene.IdxReader;
 import lucene.IdxSearcher;
+import lucene.QueryFactory;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
 import schemas.TopDocument;
 import schemas.TopicQuery;
@@ -17,19 +16,40 @@ import java.util.Map;
 
 /**
  * Implementation of the classical Boolean Retrieval Model.
+ *
+ * Field queries are built programmatically by a QueryFactory (shared analyzer and cache of analyzed tokens), so topic
+ * texts are not interpreted as query syntax.
  */
 public class BooleanModel extends RetrievalModel {
+    private static final int TOKENS_CACHE_SIZE = 10000;
 
     private IdxReader reader;
     private IdxSearcher searcher;
+    private QueryFactory queryFactory;
 
     public BooleanModel(IdxReader reader, IdxSearcher searcher) {
+        this(reader, searcher, new QueryFactory(new StandardAnalyzer(), TOKENS_CACHE_SIZE));
+    }
+
+    public BooleanModel(IdxReader reader, IdxSearcher searcher, QueryFactory queryFactory) {
         super(reader, searcher);
         this.reader = reader;
         this.searcher = searcher;
+        this.queryFactory = queryFactory;
     }
 
     public List<TopDocument> query(TopicQuery topicQuery, int topN) {
+        long start = profiler.start();
+        Query query = buildQuery(topicQuery);
+        profiler.record(QueryProfiler.Stage.PARSE, start);
+        TopDocs topDocs = search(query, topN);
+        return super.coerce(topDocs, topN);
+    }
+
+    /**
+     * Builds the query of a topic: a disjunction of the query of each field boosted by the weight of the field.
+     */
+    public Query buildQuery(TopicQuery topicQuery) {
         Map<String, Query> fieldQueries = parseQueries(topicQuery.fieldTexts());
         BooleanQuery.Builder builder = new BooleanQuery.Builder();
         for (Map.Entry<String, Query> fieldQuery : fieldQueries.entrySet()) {
@@ -37,25 +57,13 @@ public class BooleanModel extends RetrievalModel {
                     new BoostQuery(fieldQuery.getValue(), topicQuery.fieldWeights().get(fieldQuery.getKey())),
                     BooleanClause.Occur.SHOULD);
         }
-        BooleanQuery booleanQuery = builder.build();
-        TopDocs topDocs = searcher.search(booleanQuery, topN);
-        return super.coerce(topDocs, topN);
+        return builder.build();
     }
 
     private Map<String, Query> parseQueries(Map<String, String> fieldTexts) {
         Map<String, Query> queries = new HashMap<>();
-        QueryParser parser;
-        Query query;
         for (Map.Entry<String, String> entry : fieldTexts.entrySet()) {
-            parser = new QueryParser(entry.getKey(), new StandardAnalyzer());
-            try {
-                query = parser.parse(entry.getValue());
-            } catch (ParseException e) {
-                System.out.println("IOException while parsing: " + entry.getValue());
-                e.printStackTrace();
-                return null;
-            }
-            queries.put(entry.getKey(), query);
+            queries.put(entry.getKey(), queryFactory.build(entry.getKey(), entry.getValue()));
         }
         return queries;
     }
@@ -2,15 +2,29 @@ package models;
 
 import lucene.IdxReader;
 import lucene.IdxSearcher;
-import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.*;
 import schemas.TopDocument;
-import schemas.TopDocumentComparator;
 import schemas.TopicQuery;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.IOException;
 import java.util.List;
+import java.util.Objects;
 
+/**
+ * BooleanModel with the PageRank of each document as a prior: the score of a document is its BooleanModel score
+ * multiplied by (1 + PageRank).
+ *
+ * The prior is applied inside the query (PriorQuery over the PageRank doc values), so it is computed while collecting
+ * the top documents instead of re-ranking the BooleanModel top documents, and any document of the collection can be
+ * promoted to the top.
+ *
+ * PageRank is kept in doc values because it is updated in place (see PageRank), and the prior is bounded by
+ * maxPrior = 1 + the highest PageRank of the index, so PriorQuery reports the maximum scores of the BooleanModel
+ * query multiplied by maxPrior and the block-max WAND skipping of the BooleanModel query keeps working.
+ */
 public class PageRankModel extends RetrievalModel {
     private IdxReader reader;
     private IdxSearcher searcher;
@@ -18,6 +32,7 @@ public class PageRankModel extends RetrievalModel {
     private String countField = "countPageRank";
     private String binaryField = "binaryPageRank";
     private String field;
+    private double maxPrior;
 
     public PageRankModel(IdxReader reader, IdxSearcher searcher, boolean count) {
         super(reader, searcher);
@@ -29,20 +44,177 @@ public class PageRankModel extends RetrievalModel {
         } else {
             field = binaryField;
         }
+        maxPrior = 1 + maxPageRank();
+    }
+
+    @Override
+    public void setProfiler(QueryProfiler profiler) {
+        super.setProfiler(profiler);
+        baseModel.setProfiler(profiler);
     }
 
     public List<TopDocument> query(TopicQuery topicQuery, int topN) {
-        List<TopDocument> initialResults = baseModel.query(topicQuery, topN);
-
-        List<TopDocument> finalResults = new ArrayList<>();
-        for (TopDocument topDoc : initialResults) {
-            Document doc = reader.document(topDoc.docID());
-            topDoc.setScore(
-                    Double.parseDouble(doc.get(field))*topDoc.score()
-            + topDoc.score());
-            finalResults.add(topDoc);
-        }
-        Collections.sort(finalResults, new TopDocumentComparator());
-        return finalResults;
+        long start = profiler.start();
+        Query query = new PriorQuery(baseModel.buildQuery(topicQuery), field, maxPrior);
+        profiler.record(QueryProfiler.Stage.PARSE, start);
+        TopDocs topDocs = search(query, topN);
+        return super.coerce(topDocs, topN);
+    }
+
+    /**
+     * Highest PageRank of the documents of the index (read once, PageRank only changes when the index is updated).
+     */
+    private double maxPageRank() {
+        double max = 0;
+        try {
+            for (LeafReaderContext leaf : reader.reader().leaves()) {
+                NumericDocValues values = DocValues.getNumeric(leaf.reader(), field);
+                for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                    max = Math.max(max, Double.longBitsToDouble(values.longValue()));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while reading " + field + " of " + reader.foldername());
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return max;
+    }
+
+    /**
+     * Scores of a query multiplied by 1 + the PageRank of each document (1 if the document has no PageRank).
+     *
+     * Global variables:
+     *      in        [Query]  : Query whose scores are boosted.
+     *      field     [String] : Doc values field with the PageRank of each document.
+     *      maxPrior  [double] : Upper bound of 1 + PageRank in the index.
+     */
+    private static class PriorQuery extends Query {
+        private final Query in;
+        private final String field;
+        private final double maxPrior;
+
+        private PriorQuery(Query in, String field, double maxPrior) {
+            this.in = in;
+            this.field = field;
+            this.maxPrior = maxPrior;
+        }
+
+        @Override
+        public Query rewrite(org.apache.lucene.index.IndexReader reader) throws IOException {
+            Query rewritten = in.rewrite(reader);
+            return rewritten == in ? this : new PriorQuery(rewritten, field, maxPrior);
+        }
+
+        @Override
+        public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+            Weight inWeight = in.createWeight(searcher, scoreMode, boost);
+            return new Weight(this) {
+                @Override
+                public Scorer scorer(LeafReaderContext context) throws IOException {
+                    Scorer inScorer = inWeight.scorer(context);
+                    if (inScorer == null) {
+                        return null;
+                    }
+                    return new PriorScorer(this, inScorer, DocValues.getNumeric(context.reader(), field), maxPrior);
+                }
+
+                @Override
+                public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+                    Explanation inExplanation = inWeight.explain(context, doc);
+                    if (!inExplanation.isMatch()) {
+                        return inExplanation;
+                    }
+                    NumericDocValues values = DocValues.getNumeric(context.reader(), field);
+                    double prior = prior(values, doc);
+                    return Explanation.match((float) (inExplanation.getValue().doubleValue() * prior),
+                            "product of:", inExplanation, Explanation.match(prior, "1 + " + field));
+                }
+
+                @Override
+                public boolean isCacheable(LeafReaderContext context) {
+                    return inWeight.isCacheable(context) && DocValues.isCacheable(context, field);
+                }
+            };
+        }
+
+        @Override
+        public void visit(QueryVisitor visitor) {
+            in.visit(visitor.getSubVisitor(BooleanClause.Occur.MUST, this));
+        }
+
+        @Override
+        public String toString(String field) {
+            return "(" + in.toString(field) + ")*(1+" + this.field + ")";
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return sameClassAs(obj) && in.equals(((PriorQuery) obj).in) && field.equals(((PriorQuery) obj).field) &&
+                    maxPrior == ((PriorQuery) obj).maxPrior;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(classHash(), in, field, maxPrior);
+        }
+    }
+
+    private static double prior(NumericDocValues values, int doc) throws IOException {
+        return values.advanceExact(doc) ? 1 + Double.longBitsToDouble(values.longValue()) : 1;
+    }
+
+    /**
+     * Scorer of a PriorQuery: iterates the documents of the scorer of the boosted query. Maximum scores are the ones
+     * of the boosted query multiplied by maxPrior, and a minimum competitive score is passed to the boosted query
+     * divided by maxPrior, so it can skip the blocks that cannot be competitive.
+     */
+    private static class PriorScorer extends Scorer {
+        private final Scorer in;
+        private final NumericDocValues values;
+        private final double maxPrior;
+
+        private PriorScorer(Weight weight, Scorer in, NumericDocValues values, double maxPrior) {
+            super(weight);
+            this.in = in;
+            this.values = values;
+            this.maxPrior = maxPrior;
+        }
+
+        @Override
+        public float score() throws IOException {
+            return (float) (in.score() * prior(values, in.docID()));
+        }
+
+        @Override
+        public int docID() {
+            return in.docID();
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+            return in.iterator();
+        }
+
+        @Override
+        public TwoPhaseIterator twoPhaseIterator() {
+            return in.twoPhaseIterator();
+        }
+
+        @Override
+        public int advanceShallow(int target) throws IOException {
+            return in.advanceShallow(target);
+        }
+
+        @Override
+        public float getMaxScore(int upTo) throws IOException {
+            return (float) (in.getMaxScore(upTo) * maxPrior);
+        }
+
+        @Override
+        public void setMinCompetitiveScore(float minScore) throws IOException {
+            // lower bound of the scores of the boosted query that can reach minScore
+            in.setMinCompetitiveScore(Math.max(0, Math.nextDown((float) (minScore / maxPrior))));
+        }
     }
 }
@@ -29,6 +29,12 @@ public class ProbabilityModel extends RetrievalModel {
         this.expandFields = expandFields;
     }
 
+    @Override
+    public void setProfiler(QueryProfiler profiler) {
+        super.setProfiler(profiler);
+        baseModel.setProfiler(profiler);
+    }
+
     public List<TopDocument> query(TopicQuery topicQuery, int topN) {
         TopicQuery tempQuery = topicQuery.copy();
         List<TopDocument> initialResults = baseModel.query(tempQuery, topN);
@@ -44,6 +50,7 @@ public class ProbabilityModel extends RetrievalModel {
     }
 
     private List<String> expand(List<TopDocument> topDocuments, String fieldname) {
+        long start = profiler.start();
         Double numDocs = (double) reader.numDocs();
         Double numRelDocs = (double) topDocuments.size();
 
@@ -87,12 +94,15 @@ public class ProbabilityModel extends RetrievalModel {
             scores.put(term, Math.log((VRt + 0.5) / (numRelDocs - VRt + 1)) + Math.log(numDocs/dft));
         }
 
+        start = profiler.record(QueryProfiler.Stage.EXPAND, start);
+
         // Sort scores by value
         List<String> sortedTerms = scores
                 .entrySet()
                 .stream()
                 .sorted(Map.Entry.comparingByValue())
                 .map(x -> x.getKey()).toList();
+        profiler.record(QueryProfiler.Stage.SORT, start);
         // Return the list of numTerms terms with the highest score
         return sortedTerms.subList(0, Math.min(numTerms, sortedTerms.size()));
     }
@@ -0,0 +1,137 @@
+package models;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import schemas.LatencyHistogram;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Latencies of the stages of the queries of a retrieval model.
+ *
+ * Each thread records in its own histograms (one per stage), registered the first time the thread records a stage,
+ * so recording a latency is a System.nanoTime() call and a few writes without locks nor contention. The histograms of
+ * all the threads are merged when the latencies are read (see histograms() and toJson()).
+ *
+ * Stages:
+ *      PARSE     : Construction of the Lucene query of the topic.
+ *      SEARCH    : Search of the top documents in the index.
+ *      HYDRATE   : Conversion of the hits to TopDocuments, loading their stored fields (see RetrievalModel.coerce()).
+ *      EXPAND    : Reading the term vectors of the top documents to score the expansion terms (ProbabilityModel).
+ *      SORT      : Sorting the expansion terms by score (ProbabilityModel).
+ *      FEEDBACK  : Rocchio update of the query embedding (VectorModel).
+ *      TOTAL     : Whole query of a topic (recorded by QueryComputation).
+ * Stages of a base model (e.g. the BooleanModel of the PageRankModel) are recorded in the profiler of the model that
+ * uses it.
+ *
+ * Global variables:
+ *      model             [String]                                  : Name of the profiled model.
+ *      enabled           [boolean]                                 : Whether latencies are recorded.
+ *      threadHistograms  [ConcurrentLinkedQueue<LatencyHistogram[]>] : Histograms of the stages of each thread.
+ *      histograms        [ThreadLocal<LatencyHistogram[]>]         : Histograms of the stages of the current thread.
+ */
+public class QueryProfiler {
+    public enum Stage {PARSE, SEARCH, HYDRATE, EXPAND, SORT, FEEDBACK, TOTAL}
+
+    /**
+     * Profiler that records nothing (used by the models until a profiler is set).
+     */
+    public static final QueryProfiler DISABLED = new QueryProfiler("disabled", false);
+
+    private final String model;
+    private final boolean enabled;
+    private final Queue<LatencyHistogram[]> threadHistograms = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<LatencyHistogram[]> histograms = ThreadLocal.withInitial(this::register);
+
+    public QueryProfiler(String model) {
+        this(model, true);
+    }
+
+    private QueryProfiler(String model, boolean enabled) {
+        this.model = model;
+        this.enabled = enabled;
+    }
+
+    public String model() {
+        return model;
+    }
+
+    /**
+     * Start time of a stage.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the latency of a stage started at start (see start()).
+     * @return End time of the stage, so it can be used as start time of the next one.
+     */
+    public long record(Stage stage, long start) {
+        if (!enabled) {
+            return 0;
+        }
+        long end = System.nanoTime();
+        histograms.get()[stage.ordinal()].record(end - start);
+        return end;
+    }
+
+    private LatencyHistogram[] register() {
+        LatencyHistogram[] stageHistograms = new LatencyHistogram[Stage.values().length];
+        for (int i = 0; i < stageHistograms.length; i++) {
+            stageHistograms[i] = new LatencyHistogram();
+        }
+        threadHistograms.add(stageHistograms);
+        return stageHistograms;
+    }
+
+    /**
+     * Histograms of all the threads merged by stage (stages without latencies are not included).
+     */
+    public Map<Stage, LatencyHistogram> histograms() {
+        Map<Stage, LatencyHistogram> merged = new EnumMap<>(Stage.class);
+        for (LatencyHistogram[] stageHistograms : threadHistograms) {
+            for (Stage stage : Stage.values()) {
+                if (stageHistograms[stage.ordinal()].count() > 0) {
+                    merged.computeIfAbsent(stage, s -> new LatencyHistogram()).add(stageHistograms[stage.ordinal()]);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Number of latencies and p50, p95, p99 and max latencies (nanoseconds) of each stage of each profiler as JSON:
+     * {model: {stage: {count, p50, p95, p99, max}}}.
+     */
+    public static String toJson(List<QueryProfiler> profilers) {
+        Map<String, Map<String, Map<String, Long>>> report = new LinkedHashMap<>();
+        for (QueryProfiler profiler : profilers) {
+            Map<String, Map<String, Long>> stages = new LinkedHashMap<>();
+            for (Map.Entry<Stage, LatencyHistogram> stage : profiler.histograms().entrySet()) {
+                LatencyHistogram histogram = stage.getValue();
+                Map<String, Long> latencies = new LinkedHashMap<>();
+                latencies.put("count", histogram.count());
+                latencies.put("p50", histogram.percentile(50));
+                latencies.put("p95", histogram.percentile(95));
+                latencies.put("p99", histogram.percentile(99));
+                latencies.put("max", histogram.max());
+                stages.put(stage.getKey().name().toLowerCase(Locale.ROOT), latencies);
+            }
+            report.put(profiler.model(), stages);
+        }
+        try {
+            return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report);
+        } catch (JsonProcessingException e) {
+            System.out.println("JsonProcessingException while writing the query latencies");
+            e.printStackTrace();
+            return "{}";
+        }
+    }
+
+    public String toJson() {
+        return toJson(List.of(this));
+    }
+}
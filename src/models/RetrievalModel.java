@@ -2,7 +2,7 @@ package models;
 
 import lucene.IdxReader;
 import lucene.IdxSearcher;
-import org.apache.lucene.document.Document;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
 import schemas.TopDocument;
 import schemas.TopicQuery;
@@ -10,26 +10,51 @@ import schemas.TopicQuery;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public abstract class RetrievalModel {
+    private static final Set<String> HYDRATED_FIELDS = Set.of("cordUID");
 
     protected IdxReader reader;
     protected IdxSearcher searcher;
+    protected QueryProfiler profiler = QueryProfiler.DISABLED;
 
     public RetrievalModel(IdxReader reader, IdxSearcher searcher) {
         this.reader = reader;
         this.searcher = searcher;
     }
 
+    /**
+     * Sets the profiler where the latencies of the stages of the queries are recorded (see QueryProfiler).
+     */
+    public void setProfiler(QueryProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Searches the top documents of a query, recording the SEARCH latency.
+     */
+    protected TopDocs search(Query query, int topN) {
+        long start = profiler.start();
+        TopDocs topDocs = searcher.search(query, topN);
+        profiler.record(QueryProfiler.Stage.SEARCH, start);
+        return topDocs;
+    }
 
 
+    /**
+     * Converts the hits of a search to (at most topN) TopDocuments. Only the cordUID of each hit is loaded, visiting the
+     * hits in docID order; any other stored field is loaded when it is requested.
+     */
     public List<TopDocument> coerce(TopDocs topDocs, int topN) {
-        List<TopDocument> topDocuments = Arrays.stream(topDocs.scoreDocs).map(topDoc -> {
-            Document doc = reader.document(topDoc.doc);
-            TopDocument topDocument = new TopDocument(doc, topDoc.doc, topDoc.score);
-            return topDocument;
-        }).toList();
-        return topDocuments.subList(0, topN);
+        long start = profiler.start();
+        List<TopDocument> topDocuments = Arrays.stream(topDocs.scoreDocs)
+                .limit(topN)
+                .map(topDoc -> new TopDocument(reader, topDoc.doc, topDoc.score))
+                .toList();
+        TopDocument.hydrate(topDocuments, HYDRATED_FIELDS);
+        profiler.record(QueryProfiler.Stage.HYDRATE, start);
+        return topDocuments;
     }
 
     public abstract List<TopDocument> query(TopicQuery topicQuery, int topN);
@@ -3,7 +3,6 @@ package models;
 import lucene.IdxReader;
 import lucene.IdxSearcher;
 import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.search.KnnVectorQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
@@ -12,9 +11,15 @@ import schemas.TopDocument;
 import schemas.TopicQuery;
 
 import java.util.List;
+import java.util.Set;
 
-import static util.AuxiliarFunctions.string2vector;
-
+/**
+ * Vector space model over the document embeddings with Rocchio relevance feedback.
+ *
+ * Embeddings are read from the vector values of the index. The sum of the embeddings of the whole collection is
+ * computed once per reader (see IdxReader.embeddingSum()), so each feedback iteration only reads the embeddings of the
+ * top documents and the sum of the non-relevant ones is the collection sum minus the relevant sum.
+ */
 public class VectorModel extends RetrievalModel {
     private IdxReader reader;
     private IdxSearcher searcher;
@@ -23,7 +28,6 @@ public class VectorModel extends RetrievalModel {
     private double gamma;
     private int iterations;
 
-
     public VectorModel(IdxReader reader, IdxSearcher searcher, double alpha, double beta, double gamma, int iterations) {
         super(reader, searcher);
         this.reader = reader;
@@ -39,45 +43,55 @@ public class VectorModel extends RetrievalModel {
         Embedding embedding = topicQuery.embedding();
         for (int iter=0; iter < (iterations-1); iter++) {
             results = vectorQuery(embedding, topN);
+            long start = profiler.start();
             embedding = rocchio(embedding, results);
+            profiler.record(QueryProfiler.Stage.FEEDBACK, start);
         }
         return vectorQuery(embedding, topN);
     }
 
     private List<TopDocument> vectorQuery(Embedding queryEmbedding, int topN) {
-        Query knnQuery = new KnnVectorQuery("knn-embedding", queryEmbedding.getFloat(), topN);
-        TopDocs topDocs = searcher.search(knnQuery, topN);
+        long start = profiler.start();
+        Query knnQuery = new KnnVectorQuery(IdxReader.EMBEDDING_FIELD, queryEmbedding.getFloat(), topN);
+        profiler.record(QueryProfiler.Stage.PARSE, start);
+        TopDocs topDocs = search(knnQuery, topN);
         return super.coerce(topDocs, topN);
     }
 
     private Embedding rocchio(Embedding queryEmbedding, List<TopDocument> relevantSet) {
-        ArrayRealVector sumRelevant = new ArrayRealVector(queryEmbedding.size());
-        ArrayRealVector sumNonRelevant = new ArrayRealVector(queryEmbedding.size());
+        double[] sumRelevant = new double[queryEmbedding.size()];
         int countRelevant = 0;
-        int countNonRelevant = 0;
-
-        List<String> cordUIDrel = relevantSet.stream().map(doc -> doc.cordUID()).toList();
 
-        for (int docID = 0; docID < reader.numDocs(); docID++) {
-            Document doc = reader.document(docID);
-            if (cordUIDrel.contains(doc.get("cordUID"))) {
-                sumRelevant.add(string2vector(doc.get("embedding"), " "));
+        // only the embeddings of the top documents are read: the non-relevant ones are the rest of the collection
+        for (TopDocument doc : relevantSet) {
+            float[] docEmbedding = reader.embedding(doc.docID());
+            if (docEmbedding != null) {
+                for (int i = 0; i < sumRelevant.length; i++) {
+                    sumRelevant[i] += docEmbedding[i];
+                }
                 countRelevant++;
-            } else {
-                sumNonRelevant.add(string2vector(doc.get("embedding"), " "));
-                countNonRelevant++;
             }
         }
+        double[] collectionSum = reader.embeddingSum();
+        double[] sumNonRelevant = new double[queryEmbedding.size()];
+        for (int i = 0; i < sumNonRelevant.length; i++) {
+            sumNonRelevant[i] = collectionSum[i] - sumRelevant[i];
+        }
+        int countNonRelevant = reader.numEmbeddings() - countRelevant;
 
-        // compute the new query
+        // compute the new query (a centroid is left out when its set is empty, e.g. the KNN query found no documents)
 
         ArrayRealVector newQueryEmbedding = (ArrayRealVector) queryEmbedding.getArray().mapMultiply(alpha);
-        newQueryEmbedding = newQueryEmbedding.add(
-                sumRelevant.mapMultiply(beta/countRelevant)
-        );
-        newQueryEmbedding = newQueryEmbedding.subtract(
-                sumNonRelevant.mapMultiply(gamma/countNonRelevant)
-        );
+        if (countRelevant > 0) {
+            newQueryEmbedding = newQueryEmbedding.add(
+                    new ArrayRealVector(sumRelevant, false).mapMultiply(beta/countRelevant)
+            );
+        }
+        if (countNonRelevant > 0) {
+            newQueryEmbedding = newQueryEmbedding.subtract(
+                    new ArrayRealVector(sumNonRelevant, false).mapMultiply(gamma/countNonRelevant)
+            );
+        }
         return new Embedding(newQueryEmbedding);
     }
 }
@@ -0,0 +1,309 @@
+package schemas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Citation graph between the documents of the collection stored in compressed sparse row (CSR) format. Each row is a
+ * cordID and its edges are the cordIDs it is linked to, so memory is proportional to the number of references instead
+ * of numNodes^2.
+ *
+ * numNodes    [int]      : Number of documents (rows) of the graph.
+ * rowPointers [int[]]    : Edges of row i are stored in the positions rowPointers[i] .. rowPointers[i+1]-1.
+ * targets     [int[]]    : cordID at the other end of each edge (sorted inside each row).
+ * weights     [float[]]  : Citation count of each edge.
+ */
+public class CitationGraph {
+    private final int numNodes;
+    private final int[] rowPointers;
+    private final int[] targets;
+    private final float[] weights;
+
+    /**
+     * Accumulates the rows of the graph (in any order and from several threads as long as each row is set only once)
+     * and compacts them in CSR format when build() is called.
+     */
+    public static class Builder {
+        private final int numNodes;
+        private final int[][] rowTargets;
+        private final float[][] rowWeights;
+
+        public Builder(int numNodes) {
+            this.numNodes = numNodes;
+            rowTargets = new int[numNodes][];
+            rowWeights = new float[numNodes][];
+        }
+
+        /**
+         * Sets the edges of a row from the references vector of a document.
+         * @param row cordID of the document.
+         * @param refsVector Sparse references vector of the document (cordID -> count).
+         */
+        public void setRow(int row, CompressedRefsVector refsVector) {
+            int[] rowT = new int[refsVector.values().size()];
+            float[] rowW = new float[rowT.length];
+            int i = 0;
+            for (Map.Entry<Integer, Double> entry : refsVector.values().entrySet()) {
+                rowT[i] = entry.getKey();
+                i++;
+            }
+            Arrays.sort(rowT);
+            for (i = 0; i < rowT.length; i++) {
+                rowW[i] = refsVector.values().get(rowT[i]).floatValue();
+            }
+            rowTargets[row] = rowT;
+            rowWeights[row] = rowW;
+        }
+
+        /**
+         * Sets the edges of a row directly from its sparse string representation (see CompressedRefsVector.toString())
+         * without building the intermediate map of the references vector.
+         * @param row cordID of the document.
+         * @param content Sequence of "cordID:count" entries sorted by cordID.
+         */
+        public void setRow(int row, String content) {
+            if (content.length() == 0) {
+                return;
+            }
+            String[] entries = content.split(CompressedRefsVector.ITEM_VECTOR_SEP);
+            int[] rowT = new int[entries.length];
+            float[] rowW = new float[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                int sep = entries[i].indexOf(CompressedRefsVector.ENTRY_SEP);
+                rowT[i] = Integer.parseInt(entries[i].substring(0, sep));
+                rowW[i] = Float.parseFloat(entries[i].substring(sep + 1));
+            }
+            rowTargets[row] = rowT;
+            rowWeights[row] = rowW;
+        }
+
+        public CitationGraph build() {
+            int[] rowPointers = new int[numNodes + 1];
+            for (int row = 0; row < numNodes; row++) {
+                int degree = rowTargets[row] == null ? 0 : rowTargets[row].length;
+                rowPointers[row + 1] = rowPointers[row] + degree;
+            }
+            int[] targets = new int[rowPointers[numNodes]];
+            float[] weights = new float[rowPointers[numNodes]];
+            for (int row = 0; row < numNodes; row++) {
+                if (rowTargets[row] == null) {
+                    continue;
+                }
+                System.arraycopy(rowTargets[row], 0, targets, rowPointers[row], rowTargets[row].length);
+                System.arraycopy(rowWeights[row], 0, weights, rowPointers[row], rowWeights[row].length);
+            }
+            return new CitationGraph(numNodes, rowPointers, targets, weights);
+        }
+    }
+
+    public CitationGraph(int numNodes, int[] rowPointers, int[] targets, float[] weights) {
+        this.numNodes = numNodes;
+        this.rowPointers = rowPointers;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    public int numNodes() {
+        return numNodes;
+    }
+
+    public int numEdges() {
+        return targets.length;
+    }
+
+    /** First edge position of the row. */
+    public int start(int row) {
+        return rowPointers[row];
+    }
+
+    /** Last edge position (exclusive) of the row. */
+    public int end(int row) {
+        return rowPointers[row + 1];
+    }
+
+    public int degree(int row) {
+        return rowPointers[row + 1] - rowPointers[row];
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    public float weight(int edge) {
+        return weights[edge];
+    }
+
+    /**
+     * Sum of the weights of each row. For the references graph this is the total number of citations of each document.
+     */
+    public double[] rowWeights() {
+        double[] sums = new double[numNodes];
+        for (int row = 0; row < numNodes; row++) {
+            for (int edge = rowPointers[row]; edge < rowPointers[row + 1]; edge++) {
+                sums[row] += weights[edge];
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Sum of the weights and number of edges that arrive to each node (column). For the inverse references graph this
+     * gives the citations and references made by each original document.
+     * @return Two arrays: {column weights, column degrees}.
+     */
+    public double[][] columnWeights() {
+        double[] sums = new double[numNodes];
+        double[] degrees = new double[numNodes];
+        for (int edge = 0; edge < targets.length; edge++) {
+            sums[targets[edge]] += weights[edge];
+            degrees[targets[edge]] += 1;
+        }
+        return new double[][]{sums, degrees};
+    }
+
+    /**
+     * Subgraph of the nodes that are kept, renumbered with consecutive ids (edges to removed nodes are dropped). Used to
+     * remove the cordIDs without a live document (see PageRank), which would otherwise be counted as dangling nodes.
+     * @param newIds New id of each node (-1 if the node is removed).
+     * @param numNewNodes Number of nodes kept.
+     */
+    public CitationGraph compact(int[] newIds, int numNewNodes) {
+        int[] cRowPointers = new int[numNewNodes + 1];
+        for (int row = 0; row < numNodes; row++) {
+            if (newIds[row] < 0) {
+                continue;
+            }
+            int degree = 0;
+            for (int edge = rowPointers[row]; edge < rowPointers[row + 1]; edge++) {
+                if (newIds[targets[edge]] >= 0) {
+                    degree++;
+                }
+            }
+            cRowPointers[newIds[row] + 1] = degree;
+        }
+        for (int row = 0; row < numNewNodes; row++) {
+            cRowPointers[row + 1] += cRowPointers[row];
+        }
+
+        int[] cTargets = new int[cRowPointers[numNewNodes]];
+        float[] cWeights = new float[cTargets.length];
+        for (int row = 0; row < numNodes; row++) {
+            if (newIds[row] < 0) {
+                continue;
+            }
+            int position = cRowPointers[newIds[row]];
+            for (int edge = rowPointers[row]; edge < rowPointers[row + 1]; edge++) {
+                if (newIds[targets[edge]] >= 0) {
+                    cTargets[position] = newIds[targets[edge]];
+                    cWeights[position] = weights[edge];
+                    position++;
+                }
+            }
+        }
+        return new CitationGraph(numNewNodes, cRowPointers, cTargets, cWeights);
+    }
+
+    /**
+     * Transposes the graph with a counting sort over the targets: the references graph (oref -> tref) becomes the
+     * inverse references graph (tref -> oref), where row i contains the documents that reference document i.
+     */
+    public CitationGraph transpose() {
+        return transpose(ForkJoinPool.commonPool(), ForkJoinPool.commonPool().getParallelism());
+    }
+
+    /**
+     * Parallel counting sort transpose. The rows are split in numBlocks consecutive blocks and:
+     * 1) Each block counts how many of its edges arrive to each target.
+     * 2) The counts are accumulated (targets first, then blocks) to obtain the row pointers of the transposed graph
+     * and the first free position of each block in each transposed row.
+     * 3) Each block scatters its edges to its own positions.
+     * Since blocks are consecutive and scattered in order, the rows of the result are sorted without extra work and
+     * the only memory apart from the edges is one counter per (block, node).
+     *
+     * @param pool Pool where blocks are executed.
+     * @param numBlocks Number of blocks the rows are split into.
+     */
+    public CitationGraph transpose(ForkJoinPool pool, int numBlocks) {
+        numBlocks = Math.max(1, Math.min(numBlocks, numNodes));
+        int[] blockRows = new int[numBlocks + 1];
+        for (int block = 0; block <= numBlocks; block++) {
+            blockRows[block] = (int) ((long) numNodes * block / numBlocks);
+        }
+
+        // 1) count the edges of each block per target
+        int[][] cursors = new int[numBlocks][];
+        runBlocks(pool, numBlocks, block -> {
+            int[] counts = new int[numNodes];
+            for (int edge = rowPointers[blockRows[block]]; edge < rowPointers[blockRows[block + 1]]; edge++) {
+                counts[targets[edge]]++;
+            }
+            cursors[block] = counts;
+        });
+
+        // 2) row pointers of the transposed graph and starting position of each block inside each row
+        int[] tRowPointers = new int[numNodes + 1];
+        for (int row = 0; row < numNodes; row++) {
+            int position = tRowPointers[row];
+            for (int block = 0; block < numBlocks; block++) {
+                int count = cursors[block][row];
+                cursors[block][row] = position;
+                position += count;
+            }
+            tRowPointers[row + 1] = position;
+        }
+
+        // 3) scatter the edges
+        int[] tTargets = new int[targets.length];
+        float[] tWeights = new float[targets.length];
+        runBlocks(pool, numBlocks, block -> {
+            int[] blockCursors = cursors[block];
+            for (int row = blockRows[block]; row < blockRows[block + 1]; row++) {
+                for (int edge = rowPointers[row]; edge < rowPointers[row + 1]; edge++) {
+                    int position = blockCursors[targets[edge]]++;
+                    tTargets[position] = row;
+                    tWeights[position] = weights[edge];
+                }
+            }
+        });
+        return new CitationGraph(numNodes, tRowPointers, tTargets, tWeights);
+    }
+
+    private interface BlockTask {
+        void run(int block);
+    }
+
+    private static void runBlocks(ForkJoinPool pool, int numBlocks, BlockTask task) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int block = 0; block < numBlocks; block++) {
+            int finalBlock = block;
+            tasks.add(() -> {
+                task.run(finalBlock);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Error while transposing the references graph", e);
+        }
+    }
+
+    /**
+     * Returns the edges of a row as a sparse references vector in order to store them in the index.
+     */
+    public CompressedRefsVector row(int row) {
+        CompressedRefsVector vector = new CompressedRefsVector(numNodes);
+        for (int edge = rowPointers[row]; edge < rowPointers[row + 1]; edge++) {
+            vector.add(targets[edge], weights[edge]);
+        }
+        return vector;
+    }
+}
@@ -12,6 +12,7 @@ public class CompressedRefsVector {
     private int size;
     private float alpha = PageRank.alpha;
     public static String ITEM_VECTOR_SEP = " ";
+    public static String ENTRY_SEP = ":";
 
 
     public CompressedRefsVector(int size) {
@@ -19,6 +20,22 @@ public class CompressedRefsVector {
         this.size = size;
     }
 
+    /**
+     * Reads a sparse vector previously stored with toString().
+     * @param content Sequence of "index:value" entries separated by ITEM_VECTOR_SEP.
+     * @param size Dimension of the vector (number of documents of the collection).
+     */
+    public CompressedRefsVector(String content, int size) {
+        this(size);
+        if (content.length() == 0) {
+            return;
+        }
+        for (String entry : content.split(ITEM_VECTOR_SEP)) {
+            int sep = entry.indexOf(ENTRY_SEP);
+            values.put(Integer.parseInt(entry.substring(0, sep)), Double.parseDouble(entry.substring(sep + 1)));
+        }
+    }
+
     public void add(int index, double value) {
         values.put(index, value);
     }
@@ -49,6 +66,26 @@ public class CompressedRefsVector {
         return values;
     }
 
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sparse string representation of the vector: only non-zero entries are written as "index:value" pairs, sorted
+     * by index, so the stored length depends on the number of references and not on the size of the collection.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int index : new TreeSet<>(values.keySet())) {
+            if (builder.length() > 0) {
+                builder.append(ITEM_VECTOR_SEP);
+            }
+            builder.append(index).append(ENTRY_SEP).append(values.get(index));
+        }
+        return builder.toString();
+    }
+
     public ReferencesVector toReferencesVector(boolean norm) {
         ArrayRealVector binaryVector = new ArrayRealVector(size, 0);
         ArrayRealVector countVector = new ArrayRealVector(size, 0);
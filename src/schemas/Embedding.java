@@ -30,6 +30,11 @@ public class Embedding {
         );
     }
 
+    public Embedding(float[] vector) {
+        size = vector.length;
+        floatEmbedding = vector;
+    }
+
     public Embedding(ArrayRealVector vector) {
         size = vector.getDimension();
         floatEmbedding = new float[size];
@@ -45,6 +50,10 @@ public class Embedding {
      }
 
      public ArrayRealVector getArray() {
+        if (Objects.isNull(arrayEmbedding)) {
+            arrayEmbedding = new ArrayRealVector(size);
+            IntStream.range(0, size).forEach(i -> arrayEmbedding.setEntry(i, floatEmbedding[i]));
+        }
         return arrayEmbedding;
      }
 
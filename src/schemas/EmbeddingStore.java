@@ -0,0 +1,227 @@
+package schemas;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only store of the document embeddings backed by a memory-mapped binary file, so vectors are read off-heap and
+ * without parsing text.
+ *
+ * Files of the store (written by convert()):
+ *      vectors file : Header with a magic number, the number of rows and the dimension (three int32) and the size and
+ *                     last modification time of the converted CSV file (two int64), followed by the embeddings as
+ *                     row-major little-endian float32 values.
+ *      index file   : One cordUID per line in row order (line i is the cordUID of row i).
+ *
+ * The size and modification time of the CSV file are checked by isCurrent(), so the store is converted again when a
+ * new release of the embeddings CSV file replaces the old one.
+ *
+ * Global variables:
+ *      numRows      [int]                    : Number of embeddings of the store.
+ *      dimension    [int]                    : Dimension of each embedding.
+ *      rows         [Map<String, Integer>]   : Row of each cordUID.
+ *      cordUIDs     [String[]]               : cordUID of each row.
+ *      chunks       [FloatBuffer[]]          : Mapped regions of the vectors file (each one holds rowsPerChunk rows).
+ */
+public class EmbeddingStore {
+    private static final int MAGIC = 0x454d4231;     // "EMB1"
+    private static final int HEADER_BYTES = 3 * Integer.BYTES + 2 * Long.BYTES;
+
+    private final int numRows;
+    private final int dimension;
+    private final Map<String, Integer> rows;
+    private final String[] cordUIDs;
+    private final int rowsPerChunk;
+    private final FloatBuffer[] chunks;
+
+    /**
+     * Maps the vectors file and loads the cordUID index.
+     * @param vectorsPath Path of the binary vectors file.
+     * @param indexPath Path of the cordUID index file.
+     */
+    public EmbeddingStore(Path vectorsPath, Path indexPath) throws IOException {
+        List<String> lines = Files.readAllLines(indexPath, StandardCharsets.UTF_8);
+        cordUIDs = lines.toArray(new String[0]);
+        rows = new HashMap<>(2 * cordUIDs.length);
+        for (int row = 0; row < cordUIDs.length; row++) {
+            rows.put(cordUIDs[row], row);
+        }
+
+        try (FileChannel channel = FileChannel.open(vectorsPath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("The embeddings file " + vectorsPath + " has an old format and must be converted " +
+                        "again (delete it)");
+            }
+            numRows = header.getInt();
+            dimension = header.getInt();
+            if (numRows != cordUIDs.length) {
+                throw new IOException("The embeddings file " + vectorsPath + " has " + numRows + " rows but its index " +
+                        indexPath + " has " + cordUIDs.length);
+            }
+
+            // a single mapping cannot exceed 2GB, so rows are mapped in chunks
+            long rowBytes = (long) dimension * Float.BYTES;
+            rowsPerChunk = (int) Math.max(1, Integer.MAX_VALUE / rowBytes);
+            chunks = new FloatBuffer[(numRows + rowsPerChunk - 1) / rowsPerChunk];
+            for (int chunk = 0; chunk < chunks.length; chunk++) {
+                long start = HEADER_BYTES + chunk * rowsPerChunk * rowBytes;
+                long size = Math.min(rowsPerChunk, numRows - (long) chunk * rowsPerChunk) * rowBytes;
+                chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, start, size)
+                        .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+        }
+    }
+
+    /**
+     * Whether the store files exist and were converted from the current version of the CSV file (same size and
+     * modification time).
+     * @param csvPath Path of the embeddings CSV file.
+     * @param vectorsPath Path of the binary vectors file.
+     * @param indexPath Path of the cordUID index file.
+     */
+    public static boolean isCurrent(Path csvPath, Path vectorsPath, Path indexPath) throws IOException {
+        if (!Files.exists(vectorsPath) || !Files.exists(indexPath) || Files.size(vectorsPath) < HEADER_BYTES) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(vectorsPath, StandardOpenOption.READ)) {
+            channel.read(header, 0);
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            return false;
+        }
+        header.getInt();
+        header.getInt();
+        return header.getLong() == Files.size(csvPath) &&
+                header.getLong() == Files.getLastModifiedTime(csvPath).toMillis();
+    }
+
+    /**
+     * Converts the embeddings CSV file (cordUID followed by the values of the embedding in each line) to the binary
+     * vectors file and the cordUID index of the store, streaming it line by line.
+     * @param csvPath Path of the embeddings CSV file.
+     * @param vectorsPath Path of the binary vectors file to write.
+     * @param indexPath Path of the cordUID index file to write.
+     * @return Number of converted embeddings.
+     */
+    public static int convert(Path csvPath, Path vectorsPath, Path indexPath) throws IOException {
+        int numRows = 0;
+        int dimension = -1;
+        try (BufferedReader reader = Files.newBufferedReader(csvPath, StandardCharsets.UTF_8);
+             OutputStream vectors = new BufferedOutputStream(Files.newOutputStream(vectorsPath), 1 << 16);
+             Writer index = Files.newBufferedWriter(indexPath, StandardCharsets.UTF_8)) {
+            ByteBuffer row = null;
+            vectors.write(new byte[HEADER_BYTES]);   // header is written at the end
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int sep = line.indexOf(',');
+                if (dimension == -1) {
+                    dimension = (int) line.chars().filter(c -> c == ',').count();
+                    row = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                row.clear();
+                int start = sep + 1;
+                for (int i = 0; i < dimension; i++) {
+                    int end = line.indexOf(',', start);
+                    if (end == -1) {
+                        end = line.length();
+                    }
+                    row.putFloat(Float.parseFloat(line.substring(start, end)));
+                    start = end + 1;
+                }
+                vectors.write(row.array());
+                index.write(line.substring(0, sep));
+                index.write('\n');
+                numRows++;
+            }
+        }
+
+        // header: number of rows, dimension and version of the CSV file
+        try (RandomAccessFile file = new RandomAccessFile(vectorsPath.toFile(), "rw")) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(numRows).putInt(Math.max(dimension, 0))
+                    .putLong(Files.size(csvPath)).putLong(Files.getLastModifiedTime(csvPath).toMillis());
+            file.seek(0);
+            file.write(header.array());
+        }
+        return numRows;
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Row of the embedding of a document.
+     * @return Row of the cordUID or -1 if the document has no embedding.
+     */
+    public int row(String cordUID) {
+        Integer row = rows.get(cordUID);
+        return row == null ? -1 : row;
+    }
+
+    public String cordUID(int row) {
+        return cordUIDs[row];
+    }
+
+    public boolean contains(String cordUID) {
+        return rows.containsKey(cordUID);
+    }
+
+    /**
+     * Copies the embedding of a row to a new array (absolute reads, so it is safe to call from several threads).
+     */
+    public float[] get(int row) {
+        float[] vector = new float[dimension];
+        chunks[row / rowsPerChunk].get((row % rowsPerChunk) * dimension, vector);
+        return vector;
+    }
+
+    /**
+     * Copies the embedding of a document to a new array.
+     * @return Embedding of the cordUID or null if the document has no embedding.
+     */
+    public float[] get(String cordUID) {
+        int row = row(cordUID);
+        return row == -1 ? null : get(row);
+    }
+
+    /**
+     * Adds the embedding of a row to an accumulator without copying it to the heap.
+     * @param row Row of the embedding.
+     * @param sum Accumulator of size dimension().
+     */
+    public void addTo(int row, double[] sum) {
+        FloatBuffer chunk = chunks[row / rowsPerChunk];
+        int offset = (row % rowsPerChunk) * dimension;
+        for (int i = 0; i < dimension; i++) {
+            sum[i] += chunk.get(offset + i);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package schemas;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets (as HdrHistogram): values below 128 have their own
+ * bucket and every power of two above is split in 64 buckets, so a value is reported with a relative error below 1/64
+ * using a fixed array of 3712 counts.
+ *
+ * A histogram is written by a single thread (see models.QueryProfiler, one histogram per thread and stage): record()
+ * takes no lock and does no compare-and-set, it only publishes the new counts with release writes, so other threads
+ * can merge the histograms while they are being recorded.
+ *
+ * Global variables:
+ *      counts  [AtomicLongArray] : Number of values of each bucket.
+ *      total   [AtomicLong]      : Number of values.
+ *      max     [AtomicLong]      : Maximum value.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int NUM_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value (only called by the thread that owns the histogram).
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int index = bucket(value);
+        counts.setRelease(index, counts.getPlain(index) + 1);
+        total.setRelease(total.getPlain() + 1);
+        if (value > max.getPlain()) {
+            max.setRelease(value);
+        }
+    }
+
+    /**
+     * Adds the values of another histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long count = other.counts.getAcquire(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        total.addAndGet(other.total.getAcquire());
+        max.accumulateAndGet(other.max.getAcquire(), Math::max);
+    }
+
+    public long count() {
+        return total.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Value at a percentile: the highest value of the bucket where the percentile falls (never more than max()).
+     * @param percentile Percentile between 0 and 100.
+     * @return Value at the percentile, 0 if the histogram is empty.
+     */
+    public long percentile(double percentile) {
+        long numValues = count();
+        if (numValues == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * numValues));
+        long cumulative = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= rank) {
+                return Math.min(highestValue(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Bucket of a value: the value itself below LINEAR_LIMIT and, above it, the SUB_BUCKET_BITS bits after the highest
+     * bit of the value within the buckets of its power of two.
+     */
+    private static int bucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long highestValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,88 @@
+package schemas;
+
+import java.util.*;
+
+/**
+ * Graded relevance judgements of a topics set, held per topic in hash maps so the relevance of a document is looked
+ * up in constant time.
+ *
+ * A document is relevant if its relevance is at least RELEVANCE_LEVEL (as trec_eval does by default). Judged but not
+ * relevant documents are kept because nDCG uses the graded relevance.
+ *
+ * Global variables:
+ *      judgements   [Map<Integer, Map<String, Integer>>] : Relevance of each judged document of each topic.
+ *      numRelevant  [Map<Integer, Integer>]              : Number of relevant documents of each topic.
+ */
+public class Qrels {
+    public static final int RELEVANCE_LEVEL = 1;
+
+    private final Map<Integer, Map<String, Integer>> judgements = new TreeMap<>();
+    private final Map<Integer, Integer> numRelevant = new HashMap<>();
+
+    /**
+     * Adds a judgement (if a document is judged twice in a topic, the last judgement is kept).
+     */
+    public void add(int topicID, String docID, int relevance) {
+        Map<String, Integer> topicJudgements = judgements.computeIfAbsent(topicID, topic -> new HashMap<>());
+        Integer previous = topicJudgements.put(docID, relevance);
+        int delta = (relevance >= RELEVANCE_LEVEL ? 1 : 0) -
+                (previous != null && previous >= RELEVANCE_LEVEL ? 1 : 0);
+        numRelevant.merge(topicID, delta, Integer::sum);
+    }
+
+    /**
+     * Judged topics in increasing order.
+     */
+    public Set<Integer> topics() {
+        return judgements.keySet();
+    }
+
+    public boolean contains(int topicID) {
+        return judgements.containsKey(topicID);
+    }
+
+    /**
+     * Relevance of a document in a topic (0 if it is not judged).
+     */
+    public int relevance(int topicID, String docID) {
+        Map<String, Integer> topicJudgements = judgements.get(topicID);
+        if (topicJudgements == null) {
+            return 0;
+        }
+        return topicJudgements.getOrDefault(docID, 0);
+    }
+
+    public boolean isRelevant(int topicID, String docID) {
+        return relevance(topicID, docID) >= RELEVANCE_LEVEL;
+    }
+
+    public int numRelevant(int topicID) {
+        return numRelevant.getOrDefault(topicID, 0);
+    }
+
+    /**
+     * Positive relevance values of the judged documents of a topic in decreasing order (the gains of the ideal
+     * ranking of nDCG).
+     */
+    public int[] idealGains(int topicID) {
+        Map<String, Integer> topicJudgements = judgements.getOrDefault(topicID, Map.of());
+        return topicJudgements.values().stream()
+                .filter(relevance -> relevance > 0)
+                .sorted(Comparator.reverseOrder())
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Relevant documents of a topic.
+     */
+    public Set<String> relevantDocs(int topicID) {
+        Set<String> relevant = new HashSet<>();
+        for (Map.Entry<String, Integer> judgement : judgements.getOrDefault(topicID, Map.of()).entrySet()) {
+            if (judgement.getValue() >= RELEVANCE_LEVEL) {
+                relevant.add(judgement.getKey());
+            }
+        }
+        return relevant;
+    }
+}
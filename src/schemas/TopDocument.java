@@ -1,44 +1,77 @@
 package schemas;
-import org.apache.lucene.document.Document;
 
-import java.util.Objects;
+import lucene.IdxReader;
+
+import java.util.*;
 
 /**
  * Stores only required attributes of each document and query in order to compute the designed reranking methods and
  * results.
+ *
+ * Stored fields are loaded lazily: a TopDocument only keeps its docID and score until a field is requested, and then
+ * only that field is read (see IdxReader.storedFields()). hydrate() loads the same fields of a list of results at
+ * once, visiting them in docID order.
+ *
+ * Global variables:
+ *      reader  [IdxReader]            : Reader of the index the document belongs to.
+ *      fields  [Map<String, String>]  : Stored fields already loaded (a null value if the document does not have it).
  */
 public class TopDocument {
-    private final String cordUID;
+    private final IdxReader reader;
+    private final Map<String, String> fields = new HashMap<>();
     private double score;
     private int topicID;
-    private Embedding embedding;
-    private String title;
-    private String authors;
     private int docID;
-    private double binaryPageRank;
-    private double countPageRank;
 
-    public TopDocument(Document doc, int docID, double score) {
-        this.cordUID = doc.get("cordUID");
+    public TopDocument(IdxReader reader, int docID, double score) {
+        this.reader = reader;
         this.docID = docID;
         this.score = score;
-        this.title = doc.get("title");
-        this.authors = doc.get("authors");
-        this.embedding = new Embedding(doc.get("embedding"));
-        try {
-            this.binaryPageRank = Double.parseDouble(doc.get("binaryPageRank"));
-            this.countPageRank = Double.parseDouble(doc.get("countPageRank"));
-        } catch (NullPointerException e) {}
+    }
+
+    /**
+     * Loads the given stored fields of a list of documents of the same index, reading the documents in docID order.
+     * @param topDocuments Documents to hydrate (their order is not modified).
+     * @param fieldnames Names of the stored fields to load.
+     */
+    public static void hydrate(List<TopDocument> topDocuments, Set<String> fieldnames) {
+        List<TopDocument> sorted = new ArrayList<>(topDocuments);
+        sorted.sort(Comparator.comparingInt(TopDocument::docID));
+        for (TopDocument topDocument : sorted) {
+            topDocument.load(fieldnames);
+        }
+    }
+
+    /**
+     * Loads the given stored fields that have not been loaded yet.
+     */
+    public void load(Set<String> fieldnames) {
+        Set<String> missing = new HashSet<>(fieldnames);
+        missing.removeAll(fields.keySet());
+        if (missing.isEmpty()) {
+            return;
+        }
+        Map<String, String> values = reader.storedFields(docID, missing);
+        for (String fieldname : missing) {
+            fields.put(fieldname, values.get(fieldname));
+        }
+    }
+
+    private String field(String fieldname) {
+        if (!fields.containsKey(fieldname)) {
+            load(Set.of(fieldname));
+        }
+        return fields.get(fieldname);
     }
 
 
     public String toString() {
-        String out = cordUID + ": " + score + " (topic " + topicID + ")";
+        String out = cordUID() + ": " + score + " (topic " + topicID + ")";
         return out;
     }
 
     public String cordUID() {
-        return cordUID;
+        return field("cordUID");
     }
 
     public double score() {
@@ -46,7 +79,11 @@ public class TopDocument {
     }
 
     public String title() {
-        return title;
+        return field("title");
+    }
+
+    public String authors() {
+        return field("authors");
     }
 
     public int docID() {
@@ -57,4 +94,4 @@ public class TopDocument {
         this.score = score;
     }
 
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package schemas;
 
+import java.util.HashMap;
 import java.util.Map;
 
 public class TopicQuery {
@@ -49,10 +50,17 @@ public class TopicQuery {
         return topicID;
     }
 
+    /**
+     * Copy of the topic with its own field texts and weights, so putField() does not modify this topic.
+     */
     public TopicQuery copy() {
         TopicQuery topicQuerycopy = new TopicQuery(topicID, text, embedding);
-        topicQuerycopy.setFieldTexts(fieldTexts);
-        topicQuerycopy.setFieldWeights(fieldWeights);
+        if (fieldTexts != null) {
+            topicQuerycopy.setFieldTexts(new HashMap<>(fieldTexts));
+        }
+        if (fieldWeights != null) {
+            topicQuerycopy.setFieldWeights(new HashMap<>(fieldWeights));
+        }
         return topicQuerycopy;
     }
 }
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectReader;
 
 /**
@@ -29,4 +30,19 @@ public class ObjectReaderUtils {
   public static <T> List<T> readAllValues(Path path, ObjectReader reader) throws IOException {
     return reader.<T>readValues(path.toFile()).readAll();
   }
+
+  /**
+   * Convenience method to iterate over the values of a file without loading all
+   * of them in memory.
+   *
+   * @param <T>    The type of the objects to read
+   * @param path   The path of the input file
+   * @param reader The object reader
+   * @return an iterator over the objects of type T parsed from the file (it must
+   *         be closed once it is consumed)
+   * @throws IOException exceptions are propagated
+   */
+  public static <T> MappingIterator<T> readValues(Path path, ObjectReader reader) throws IOException {
+    return reader.readValues(path.toFile());
+  }
 }
@@ -0,0 +1,112 @@
+package util;
+
+import java.util.regex.Pattern;
+
+/**
+ * Single-pass implementation of the text normalization of CollectionReader.parse().
+ *
+ * The normalization was defined as a chain of regular expressions (see sanitizeRegex()):
+ * 1) Special characters of the query syntax are replaced by spaces.
+ * 2) A space is added at the beginning and every stopword preceded by a space (" and", " or", " the", " at", " of",
+ * " a", " in", " OR", " AND") is replaced by a space, even if it is the prefix of a longer word.
+ * 3) The text is stripped and every run of whitespace characters is collapsed to a single space.
+ *
+ * sanitize() produces the same output scanning the text once into a per-thread buffer, so the only allocation is the
+ * returned string. The differential check of both implementations is cords.TextSanitizerCheck.
+ */
+public class TextSanitizer {
+    private static final String SPECIAL_CHARS = "[]()/-':\\\"}{*?!^~+;";
+    private static final String[] STOPWORDS = {"and", "or", "the", "at", "of", "a", "in", "OR", "AND"};
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private static final Pattern SPECIAL_PATTERN =
+            Pattern.compile("\\[|\\]|\\(|\\)|/|-|\\'|\\:|\\\\|\"|\\}|\\{|\\*|\\?|\\!|\\^|\\~|\\+|\\;");
+    private static final Pattern STOPWORDS_PATTERN = Pattern.compile(" and| or| the| at| of| a| in| OR| AND");
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    /**
+     * Normalizes a text in a single pass.
+     * @param text Text to validate.
+     * @return Parsed text.
+     */
+    public static String sanitize(String text) {
+        StringBuilder builder = BUFFER.get();
+        builder.setLength(0);
+        int length = text.length();
+        boolean pendingSpace = false;
+        int end = 0;        // length of the output up to its last non-whitespace character
+
+        // position -1 is the space added at the beginning of the text
+        int position = -1;
+        while (position < length) {
+            char c = charAt(text, position);
+            int matched = 0;
+            if (c == ' ') {
+                matched = matchStopword(text, position + 1);
+            }
+            position += 1 + matched;
+
+            // 3) strip and collapse runs of \s (stripped characters are any Character.isWhitespace() one)
+            if (builder.length() == 0 && !pendingSpace && Character.isWhitespace(c)) {
+                continue;
+            }
+            if (isRegexSpace(c)) {
+                pendingSpace = builder.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    builder.append(' ');
+                    pendingSpace = false;
+                }
+                builder.append(c);
+                if (!Character.isWhitespace(c)) {
+                    end = builder.length();
+                }
+            }
+        }
+        builder.setLength(end);
+        return builder.toString();
+    }
+
+    /**
+     * Character at a position of the text once special characters are replaced by spaces (position -1 is the space
+     * added at the beginning).
+     */
+    private static char charAt(String text, int position) {
+        if (position < 0) {
+            return ' ';
+        }
+        char c = text.charAt(position);
+        return SPECIAL_CHARS.indexOf(c) >= 0 ? ' ' : c;
+    }
+
+    /**
+     * Length of the first stopword (in the order of the regular expression) that starts at a position, or 0 if none.
+     */
+    private static int matchStopword(String text, int position) {
+        for (String stopword : STOPWORDS) {
+            if (text.startsWith(stopword, position)) {
+                return stopword.length();
+            }
+        }
+        return 0;
+    }
+
+    /** Characters matched by the \s class of java.util.regex. */
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Reference implementation with regular expressions (the original CollectionReader.parse() with precompiled
+     * patterns).
+     * @param text Text to validate.
+     * @return Parsed text.
+     */
+    public static String sanitizeRegex(String text) {
+        String parsedText = SPECIAL_PATTERN.matcher(text).replaceAll(" ");
+        parsedText = " " + parsedText;
+        parsedText = STOPWORDS_PATTERN.matcher(parsedText).replaceAll(" ");
+        parsedText = String.join(" ", WHITESPACE_PATTERN.split(parsedText.strip()));
+        return parsedText;
+    }
+}